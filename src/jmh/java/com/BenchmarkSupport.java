@@ -0,0 +1,43 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+final class BenchmarkSupport {
+
+    static final int LINES_PER_FILE = 200_000;
+
+    private BenchmarkSupport(){
+    }
+
+    static Map<String, Optional<?>> arguments(String... args) throws ParseException {
+        return App.parseArguments(new DefaultParser().parse(App.createOptions(), args));
+    }
+
+    static Path createLogDirectory(int files, int users, int messageLength, double malformedRatio) throws IOException {
+        Path directory = Files.createTempDirectory("log-analysis-bench");
+        for(int i = 0; i < files; i++){
+            new SyntheticLogGenerator(users, 30, messageLength, malformedRatio, i).write(directory.resolve("bench" + i + ".log"), LINES_PER_FILE);
+        }
+        return directory;
+    }
+
+    static List<FileChunk> wholeFile(Path file) throws IOException {
+        return Collections.singletonList(new FileChunk(file, 0, Files.size(file)));
+    }
+
+    static void delete(Path directory) throws IOException {
+        try(Stream<Path> files = Files.walk(directory)){
+            files.sorted(Collections.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
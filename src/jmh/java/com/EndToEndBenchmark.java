@@ -0,0 +1,44 @@
+package com;
+
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final int FILES = 8;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path directory;
+    private LogAnalyzeProcessor processor;
+
+    @Setup
+    public void setUp() throws IOException, ParseException {
+        directory = BenchmarkSupport.createLogDirectory(FILES, 1000, 40, 0.0);
+        processor = new LogAnalyzeProcessor(directory.toString(), BenchmarkSupport.arguments(
+                "-since", "2020-01-10", "-Gusername", "-Gtime", "1 day",
+                "-threads", String.valueOf(threads), "-output", directory.resolve("output.txt").toString()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSupport.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES * BenchmarkSupport.LINES_PER_FILE)
+    public void analyze() throws IOException, InterruptedException {
+        processor.analyze();
+    }
+}
@@ -0,0 +1,56 @@
+package com;
+
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"username", "since", "until", "message"})
+    public String filter;
+
+    private Path directory;
+    private List<FileChunk> chunks;
+    private Map<String, Optional<?>> arguments;
+    private EnumSet<GroupingOptions> groupingOptions;
+
+    @Setup
+    public void setUp() throws IOException, ParseException {
+        directory = BenchmarkSupport.createLogDirectory(1, 1000, 40, 0.0);
+        chunks = BenchmarkSupport.wholeFile(directory.resolve("bench0.log"));
+        switch(filter){
+            case "username": arguments = BenchmarkSupport.arguments("-username", SyntheticLogGenerator.username(7), "-Gusername"); break;
+            case "since": arguments = BenchmarkSupport.arguments("-since", "2020-01-15", "-Gusername"); break;
+            case "until": arguments = BenchmarkSupport.arguments("-until", "2020-01-15", "-Gusername"); break;
+            case "message": arguments = BenchmarkSupport.arguments("-message", ".*abc.*", "-Gusername"); break;
+            default: throw new IllegalArgumentException(filter);
+        }
+        groupingOptions = new LogAnalyzeProcessor(directory.toString(), arguments).groupingOptions();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSupport.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkSupport.LINES_PER_FILE)
+    public Map analyze(){
+        Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        new LogAnalyzer<>(chunks, arguments, container, groupingOptions, null).run();
+        return container;
+    }
+}
@@ -0,0 +1,58 @@
+package com;
+
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupingBenchmark {
+
+    @Param({"Gusername", "Gtime 1 hour", "Gtime 1 day", "Gtime 1 month", "Gusername Gtime 1 hour"})
+    public String grouping;
+
+    private Path directory;
+    private List<FileChunk> chunks;
+    private Map<String, Optional<?>> arguments;
+    private EnumSet<GroupingOptions> groupingOptions;
+
+    @Setup
+    public void setUp() throws IOException, ParseException {
+        directory = BenchmarkSupport.createLogDirectory(1, 1000, 40, 0.0);
+        chunks = BenchmarkSupport.wholeFile(directory.resolve("bench0.log"));
+        // Every record passes the filter, so the grouping does all of the work
+        switch(grouping){
+            case "Gusername": arguments = BenchmarkSupport.arguments("-since", "2019-01-01", "-Gusername"); break;
+            case "Gtime 1 hour": arguments = BenchmarkSupport.arguments("-since", "2019-01-01", "-Gtime", "1 hour"); break;
+            case "Gtime 1 day": arguments = BenchmarkSupport.arguments("-since", "2019-01-01", "-Gtime", "1 day"); break;
+            case "Gtime 1 month": arguments = BenchmarkSupport.arguments("-since", "2019-01-01", "-Gtime", "1 month"); break;
+            case "Gusername Gtime 1 hour": arguments = BenchmarkSupport.arguments("-since", "2019-01-01", "-Gusername", "-Gtime", "1 hour"); break;
+            default: throw new IllegalArgumentException(grouping);
+        }
+        groupingOptions = new LogAnalyzeProcessor(directory.toString(), arguments).groupingOptions();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSupport.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkSupport.LINES_PER_FILE)
+    public Map analyze(){
+        Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        new LogAnalyzer<>(chunks, arguments, container, groupingOptions, null).run();
+        return container;
+    }
+}
@@ -0,0 +1,73 @@
+package com;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    private static final int LINES = 100_000;
+
+    @Param({"40", "200"})
+    public int messageLength;
+
+    @Param({"0.0", "0.1"})
+    public double malformedRatio;
+
+    private final LogLineParser parser = new LogLineParser();
+    private final RawLogEntry entry = new RawLogEntry(new UsernameDictionary());
+    private ByteBuffer buffer;
+    private int[] lineStarts;
+    private int[] lineEnds;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] bytes = new SyntheticLogGenerator(1000, 30, messageLength, malformedRatio, 42).generate(LINES);
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        List<int[]> lines = new ArrayList<>();
+        int start = 0;
+        for(int i = 0; i < bytes.length; i++){
+            if(bytes[i] == '\n'){
+                lines.add(new int[]{start, i});
+                start = i + 1;
+            }
+        }
+        lineStarts = lines.stream().mapToInt(line -> line[0]).toArray();
+        lineEnds = lines.stream().mapToInt(line -> line[1]).toArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long parseLines(){
+        long parsed = 0;
+        for(int i = 0; i < lineStarts.length; i++){
+            if(parser.parse(buffer, lineStarts[i], lineEnds[i], entry)){
+                parsed += entry.getEpochSecond();
+            }
+        }
+        return parsed;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long parseLinesAndUsernames(){
+        long parsed = 0;
+        for(int i = 0; i < lineStarts.length; i++){
+            if(parser.parse(buffer, lineStarts[i], lineEnds[i], entry)){
+                parsed += entry.getUsernameId();
+            }
+        }
+        return parsed;
+    }
+}
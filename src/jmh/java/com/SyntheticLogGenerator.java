@@ -0,0 +1,77 @@
+package com;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+// Deterministic log lines for the benchmarks: the same settings always produce the same bytes
+public class SyntheticLogGenerator {
+
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static final String WORDS = "abcdefghijklmnopqrstuvwxyz ";
+
+    private final int users;
+    private final int spanDays;
+    private final int messageLength;
+    private final double malformedRatio;
+    private final long seed;
+
+    public SyntheticLogGenerator(int users, int spanDays, int messageLength, double malformedRatio, long seed){
+        this.users = users;
+        this.spanDays = spanDays;
+        this.messageLength = messageLength;
+        this.malformedRatio = malformedRatio;
+        this.seed = seed;
+    }
+
+    public static LocalDateTime start(){
+        return START;
+    }
+
+    public static String username(int user){
+        return "user" + user;
+    }
+
+    public byte[] generate(int lines) throws IOException {
+        StringWriter writer = new StringWriter();
+        write(writer, lines);
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void write(Path file, int lines) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            write(writer, lines);
+        }
+    }
+
+    // Timestamps grow monotonically over the span, like a real append-only log
+    private void write(Writer writer, int lines) throws IOException {
+        Random random = new Random(seed);
+        long spanSeconds = spanDays * 86400L;
+        char[] message = new char[messageLength];
+        for(int i = 0; i < lines; i++){
+            if(random.nextDouble() < malformedRatio){
+                writer.write("malformed line " + i + "\n");
+                continue;
+            }
+            LocalDateTime dateTime = START.plusSeconds(spanSeconds * i / lines);
+            for(int j = 0; j < messageLength; j++){
+                message[j] = WORDS.charAt(random.nextInt(WORDS.length()));
+            }
+            writer.write(dateTime.format(dateTimeFormatter));
+            writer.write(" [");
+            writer.write(username(random.nextInt(users)));
+            writer.write("] : ");
+            writer.write(message);
+            writer.write('\n');
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// The approximate aggregations of a worker: top users (-top), distinct users per period (-distinct) and quantiles of
+// records per user (-quantiles). Their memory does not grow with the number of users, and workers merge their sketches
+public class ActivitySketches {
+
+    private static final int TOP_COUNTERS_PER_USER = 10;
+    private static final int MIN_TOP_COUNTERS = 4096;
+    private static final int SAMPLE_CAPACITY = 8192;
+
+    private final int top;
+    private final ChronoUnit distinctUnit;
+    private final boolean quantiles;
+    private final SpaceSaving topUsers;
+    private final Map<LocalDateTime, HyperLogLog> distinctUsers;
+    private final UserSample userSample;
+    private final TimeBucketer timeBucketer;
+    private LocalDateTime lastBucket;
+    private HyperLogLog lastBucketUsers;
+
+    private ActivitySketches(int top, ChronoUnit distinctUnit, boolean quantiles){
+        this.top = top;
+        this.distinctUnit = distinctUnit;
+        this.quantiles = quantiles;
+        this.topUsers = top > 0 ? new SpaceSaving(Math.max(MIN_TOP_COUNTERS, top * TOP_COUNTERS_PER_USER)) : null;
+        this.distinctUsers = distinctUnit != null ? new HashMap<>() : null;
+        this.timeBucketer = distinctUnit != null ? new TimeBucketer(distinctUnit) : null;
+        this.userSample = quantiles ? new UserSample(SAMPLE_CAPACITY) : null;
+    }
+
+    // Returns null when no approximate aggregation was asked for
+    public static ActivitySketches create(Map<String, Optional<?>> arguments){
+        int top = arguments.get("top").map(value -> (Integer)value).orElse(0);
+        ChronoUnit distinctUnit = arguments.get("distinct").isPresent() ? (ChronoUnit)arguments.get("Gtime").get() : null;
+        boolean quantiles = arguments.get("quantiles").isPresent();
+        if(top == 0 && distinctUnit == null && !quantiles){
+            return null;
+        }
+        return new ActivitySketches(top, distinctUnit, quantiles);
+    }
+
+    // Empty sketches of the same kinds, for another worker
+    public ActivitySketches emptyCopy(){
+        return new ActivitySketches(top, distinctUnit, quantiles);
+    }
+
+    public void add(RawLogEntry entry){
+        long hash = hash(entry.getBuffer(), entry.getUsernameStart(), entry.getUsernameEnd());
+        if(topUsers != null){
+            topUsers.add(hash, entry.getBuffer(), entry.getUsernameStart(), entry.getUsernameEnd());
+        }
+        if(distinctUsers != null){
+            LocalDateTime bucket = timeBucketer.bucketOf(entry.getEpochSecond());
+            if(bucket != lastBucket){
+                lastBucket = bucket;
+                lastBucketUsers = distinctUsers.computeIfAbsent(bucket, key -> new HyperLogLog());
+            }
+            lastBucketUsers.add(hash);
+        }
+        if(userSample != null){
+            userSample.add(hash);
+        }
+    }
+
+    // Called by every worker when it is done, so it is synchronized; the other sketches must not change meanwhile
+    public void merge(ActivitySketches other){
+        AnalysisStats stats = AnalysisStats.current();
+        long start = stats == null ? 0 : System.nanoTime();
+        synchronized(this){
+            long locked = stats == null ? 0 : System.nanoTime();
+            if(topUsers != null){
+                topUsers.merge(other.topUsers);
+            }
+            if(distinctUsers != null){
+                other.distinctUsers.forEach((bucket, users) -> distinctUsers.computeIfAbsent(bucket, key -> new HyperLogLog()).merge(users));
+            }
+            if(userSample != null){
+                userSample.merge(other.userSample);
+            }
+            if(stats != null){
+                stats.addWaitTime("sketchesLock", locked - start);
+                stats.addStageTime("merge", System.nanoTime() - locked);
+            }
+        }
+    }
+
+    public int getTop(){
+        return this.top;
+    }
+
+    public SpaceSaving getTopUsers(){
+        return this.topUsers;
+    }
+
+    public ChronoUnit getDistinctUnit(){
+        return this.distinctUnit;
+    }
+
+    public Map<LocalDateTime, HyperLogLog> getDistinctUsers(){
+        return this.distinctUsers;
+    }
+
+    public UserSample getUserSample(){
+        return this.userSample;
+    }
+
+    // FNV-1a over the name bytes, finished with the MurmurHash3 mixer so that every bit of the result is usable
+    static long hash(ByteBuffer buffer, int start, int end){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = start; i < end; i++){
+            hash ^= buffer.get(i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
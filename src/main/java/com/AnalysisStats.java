@@ -0,0 +1,162 @@
+package com;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and timers of a run, collected only with -stats. Workers count lines in plain fields and add them here once
+// per chunk or batch, so a disabled run pays one null check per chunk
+public class AnalysisStats implements AnalysisStatsMBean {
+
+    private static volatile AnalysisStats current;
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder malformedLines = new LongAdder();
+    private final LongAdder matchedRecords = new LongAdder();
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> stageNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> waitNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> threadNanos = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxQueueDepths = new ConcurrentHashMap<>();
+
+    // The stats of this process, or null when -stats was not given
+    public static AnalysisStats current(){
+        return current;
+    }
+
+    public static AnalysisStats enable(){
+        AnalysisStats stats = new AnalysisStats();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName("com:type=AnalysisStats"));
+        } catch (JMException e) {
+            System.err.println("Cannot register the JMX statistics: " + e.getMessage());
+        }
+        current = stats;
+        return stats;
+    }
+
+    public void addChunk(long bytes){
+        bytesRead.add(bytes);
+        chunks.increment();
+    }
+
+    public void addLines(long count, long malformed, long matched){
+        lines.add(count);
+        malformedLines.add(malformed);
+        matchedRecords.add(matched);
+    }
+
+    public void addRejections(String filter, long count){
+        if(count > 0){
+            rejections.computeIfAbsent(filter, key -> new LongAdder()).add(count);
+        }
+    }
+
+    public void addStageTime(String stage, long nanos){
+        stageNanos.computeIfAbsent(stage, key -> new LongAdder()).add(nanos);
+    }
+
+    // Time spent blocked on a queue or a lock
+    public void addWaitTime(String resource, long nanos){
+        waitNanos.computeIfAbsent(resource, key -> new LongAdder()).add(nanos);
+    }
+
+    public void addThreadTime(long nanos){
+        threadNanos.computeIfAbsent(Thread.currentThread().getName(), key -> new LongAdder()).add(nanos);
+    }
+
+    public void recordQueueDepth(String queue, int depth){
+        AtomicInteger max = maxQueueDepths.computeIfAbsent(queue, key -> new AtomicInteger());
+        max.accumulateAndGet(depth, Math::max);
+    }
+
+    @Override
+    public long getElapsedMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getBytesRead(){
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getChunks(){
+        return chunks.sum();
+    }
+
+    @Override
+    public long getLines(){
+        return lines.sum();
+    }
+
+    @Override
+    public long getLinesPerSecond(){
+        return getLines() * 1000 / Math.max(1, getElapsedMillis());
+    }
+
+    @Override
+    public long getMalformedLines(){
+        return malformedLines.sum();
+    }
+
+    @Override
+    public long getMatchedRecords(){
+        return matchedRecords.sum();
+    }
+
+    @Override
+    public long getWaitMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.values().stream().mapToLong(LongAdder::sum).sum());
+    }
+
+    @Override
+    public String getSummary(){
+        return toJson();
+    }
+
+    public String toJson(){
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"elapsedMillis\": ").append(getElapsedMillis()).append(",\n");
+        json.append("  \"bytesRead\": ").append(getBytesRead()).append(",\n");
+        json.append("  \"chunks\": ").append(getChunks()).append(",\n");
+        json.append("  \"lines\": ").append(getLines()).append(",\n");
+        json.append("  \"linesPerSecond\": ").append(getLinesPerSecond()).append(",\n");
+        json.append("  \"malformedLines\": ").append(getMalformedLines()).append(",\n");
+        json.append("  \"matchedRecords\": ").append(getMatchedRecords()).append(",\n");
+        json.append("  \"rejectedBy\": ").append(toJson(rejections, false)).append(",\n");
+        json.append("  \"stageMillis\": ").append(toJson(stageNanos, true)).append(",\n");
+        json.append("  \"waitMillis\": ").append(toJson(waitNanos, true)).append(",\n");
+        json.append("  \"threadMillis\": ").append(toJson(threadNanos, true)).append(",\n");
+        Map<String, Integer> depths = new TreeMap<>();
+        maxQueueDepths.forEach((queue, depth) -> depths.put(queue, depth.get()));
+        json.append("  \"maxQueueDepth\": ").append(toJson(depths)).append("\n");
+        return json.append("}").toString();
+    }
+
+    private static String toJson(Map<String, LongAdder> values, boolean nanosToMillis){
+        Map<String, Long> sorted = new TreeMap<>();
+        values.forEach((key, value) -> sorted.put(key, nanosToMillis ? TimeUnit.NANOSECONDS.toMillis(value.sum()) : value.sum()));
+        return toJson(sorted);
+    }
+
+    private static String toJson(Map<String, ? extends Number> values){
+        StringBuilder json = new StringBuilder("{");
+        values.forEach((key, value) -> {
+            if(json.length() > 1){
+                json.append(", ");
+            }
+            json.append('"').append(key.replace("\\", "\\\\").replace("\"", "\\\"")).append("\": ").append(value);
+        });
+        return json.append('}').toString();
+    }
+}
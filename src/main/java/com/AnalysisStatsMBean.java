@@ -0,0 +1,23 @@
+package com;
+
+// JMX view of the running analysis, registered as com:type=AnalysisStats
+public interface AnalysisStatsMBean {
+
+    long getElapsedMillis();
+
+    long getBytesRead();
+
+    long getChunks();
+
+    long getLines();
+
+    long getLinesPerSecond();
+
+    long getMalformedLines();
+
+    long getMatchedRecords();
+
+    long getWaitMillis();
+
+    String getSummary();
+}
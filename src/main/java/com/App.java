@@ -3,6 +3,8 @@ package com;
 import org.apache.commons.cli.*;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -17,10 +19,106 @@ public class App
     private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final Pattern timeUnitPattern = Pattern.compile("1\\s(hour|month|day)");
+    private static final Pattern shardPattern = Pattern.compile("(\\d+)/(\\d+)");
 
-    private static final String[] appArgs = {"username", "since", "until", "message", "Gusername", "Gtime", "threads", "output"};
+    private static final String[] appArgs = {"username", "since", "until", "message", "Gusername", "Gtime", "threads", "output", "index", "incremental", "follow", "interval", "ioThreads", "parseThreads", "threadPerFile", "openFiles", "shard", "files", "partial", "top", "distinct", "quantiles", "stats", "errors", "format", "field", "Gfield", "outputFormat", "cache", "cacheSize", "prune", "prunePattern"};
 
     public static void main( String[] args ) throws IOException, InterruptedException {
+        Options options = createOptions();
+        CommandLineParser parser = new DefaultParser();
+        HelpFormatter helpFormatter = new HelpFormatter();
+
+        if(args.length > 0 && args[0].equals("merge")){
+            merge(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        try {
+            CommandLine cmd = parser.parse(options, args);
+
+            Map<String, Optional<?>> arguments = parseArguments(cmd);
+            AnalysisStats stats = arguments.get("stats").isPresent() ? AnalysisStats.enable() : null;
+            ErrorReport errors = ErrorReport.start(arguments.get("errors").map(path -> Paths.get((String)path)).orElse(null));
+            LogAnalyzeProcessor processor = new LogAnalyzeProcessor(".", arguments);
+            try {
+                if(arguments.get("follow").isPresent()){
+                    processor.follow();
+                } else {
+                    processor.analyze();
+                }
+            } finally {
+                errors.close();
+            }
+            if(stats != null){
+                System.out.println(stats.toJson());
+            }
+        } catch (ParseException | DateTimeParseException | PatternSyntaxException e) {
+            System.out.println(e.getMessage());
+            helpFormatter.printHelp("log-analysis", options);
+            System.exit(1);
+        }
+    }
+
+    // merge [-output <path> | -partial <path>] <partial>...: adds up the partial aggregates of -partial runs and writes
+    // the report, or another partial aggregate so that merges can be done in stages
+    private static void merge(String[] args) throws IOException {
+        Options options = new Options();
+        Option outputOption = new Option("output", true, "Path to output file");
+        outputOption.setArgName("path");
+        options.addOption(outputOption);
+        options.addOption(outputFormatOption());
+        Option partialOption = new Option("partial", true, "Write the merged counts to <path> as a partial aggregate instead of writing the report");
+        partialOption.setArgName("path");
+        options.addOption(partialOption);
+        HelpFormatter helpFormatter = new HelpFormatter();
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            if(cmd.getArgList().isEmpty()){
+                throw new ParseException("At least one partial aggregate file should be specified");
+            }
+            List<Path> partials = new ArrayList<>();
+            cmd.getArgList().forEach(partial -> partials.add(Paths.get(partial)));
+            if(cmd.hasOption("partial") && (cmd.hasOption("output") || cmd.hasOption("outputFormat"))){
+                throw new ParseException("-partial cannot be combined with -output or -outputFormat");
+            }
+            PartialAggregate merged = PartialAggregate.merge(partials);
+            if(cmd.hasOption("partial")){
+                merged.write(Paths.get(cmd.getOptionValue("partial")));
+                return;
+            }
+
+            Map<String, Optional<?>> arguments = new HashMap<>();
+            arguments.put("Gtime", Optional.ofNullable(merged.getTimeUnit()));
+            arguments.put("Gfield", Optional.ofNullable(merged.getGroupField()));
+            arguments.put("output", Optional.ofNullable(cmd.getOptionValue("output")));
+            arguments.put("outputFormat", parseOutputFormat(cmd.getOptionValue("outputFormat")));
+            new LogAnalyzeProcessor(".", arguments).writeReport(merged.getContainer(), merged.getGroupingOptions());
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            helpFormatter.printHelp("log-analysis merge [-output <path>] [-outputFormat <format>] [-partial <path>] <partial>...", options);
+            System.exit(1);
+        }
+    }
+
+    private static Option outputFormatOption(){
+        Option outputFormatOption = new Option("outputFormat", true, "Write the output as text (the default), csv, json or binary");
+        outputFormatOption.setArgName("format");
+        return outputFormatOption;
+    }
+
+    private static Optional<ReportWriter.Format> parseOutputFormat(String value) throws ParseException {
+        if(value == null){
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(ReportWriter.Format.valueOf(value.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Output format should be one of text, csv, json or binary");
+        }
+    }
+
+    static Options createOptions(){
         Options options = new Options();
 
         CustomOptionGroup filteringGroup = new CustomOptionGroup();
@@ -42,6 +140,10 @@ public class App
         messageOption.setArgName("pattern");
         filteringGroup.addOption(messageOption);
 
+        CustomOption fieldOption = new CustomOption("field", true, "Filters records by the value of a field of the -format, e.g. level=ERROR; can be repeated");
+        fieldOption.setArgName("name=value");
+        filteringGroup.addOption(fieldOption);
+
         CustomOptionGroup groupingGroup = new CustomOptionGroup();
         groupingGroup.setRequired(true);
 
@@ -52,6 +154,20 @@ public class App
         gTimeOption.setArgName("unit");
         groupingGroup.addOption(gTimeOption);
 
+        CustomOption gFieldOption = new CustomOption("Gfield", true, "Groups records by the value of a field of the -format instead of the username");
+        gFieldOption.setArgName("name");
+        groupingGroup.addOption(gFieldOption);
+
+        CustomOption topOption = new CustomOption("top", true, "Lists the <k> users with the most records, counted approximately in fixed memory");
+        topOption.setArgName("k");
+        groupingGroup.addOption(topOption);
+
+        CustomOption distinctOption = new CustomOption("distinct", false, "Estimates the number of distinct users per -Gtime period of time");
+        groupingGroup.addOption(distinctOption);
+
+        CustomOption quantilesOption = new CustomOption("quantiles", false, "Estimates quantiles of the number of records per user from a sample of users");
+        groupingGroup.addOption(quantilesOption);
+
         options.addOptionGroup(filteringGroup);
         options.addOptionGroup(groupingGroup);
 
@@ -63,23 +179,78 @@ public class App
         outputOption.setArgName("path");
         options.addOption(outputOption);
 
-        CommandLineParser parser = new DefaultParser();
-        HelpFormatter helpFormatter = new HelpFormatter();
+        options.addOption(outputFormatOption());
 
-        try {
-            CommandLine cmd = parser.parse(options, args);
+        Option indexOption = new Option("index", false, "Use and build <file>.idx indexes to skip data that cannot match the filters");
+        options.addOption(indexOption);
 
-            Map<String, Optional<?>> arguments = parseArguments(cmd);
-            LogAnalyzeProcessor processor = new LogAnalyzeProcessor(".", arguments);
-            processor.analyze();
-        } catch (ParseException | DateTimeParseException | PatternSyntaxException e) {
-            System.out.println(e.getMessage());
-            helpFormatter.printHelp("log-analysis", options);
-            System.exit(1);
-        }
+        Option incrementalOption = new Option("incremental", false, "Read only data appended since the previous -incremental run and add it to the saved counts");
+        options.addOption(incrementalOption);
+
+        Option followOption = new Option("follow", false, "Keep running, tail new and growing log files and rewrite the output periodically");
+        options.addOption(followOption);
+
+        Option intervalOption = new Option("interval", true, "Rewrite the output every <seconds> seconds in -follow mode. Default is 10");
+        intervalOption.setArgName("seconds");
+        options.addOption(intervalOption);
+
+        Option ioThreadsOption = new Option("ioThreads", true, "Read files with <n> threads and parse them in separate threads. Default is 1");
+        ioThreadsOption.setArgName("n");
+        options.addOption(ioThreadsOption);
+
+        Option parseThreadsOption = new Option("parseThreads", true, "Parse and filter lines with <n> threads while other threads read the files. Default is the -threads value");
+        parseThreadsOption.setArgName("n");
+        options.addOption(parseThreadsOption);
+
+        Option threadPerFileOption = new Option("threadPerFile", false, "Read every file on its own thread, for directories with many small files");
+        options.addOption(threadPerFileOption);
+
+        Option openFilesOption = new Option("openFiles", true, "Read at most <n> files at once in -threadPerFile mode. Default is 64");
+        openFilesOption.setArgName("n");
+        options.addOption(openFilesOption);
+
+        Option shardOption = new Option("shard", true, "Analyze only shard <index>/<count> of the files, numbered from 0, e.g. 0/4");
+        shardOption.setArgName("index/count");
+        options.addOption(shardOption);
+
+        Option filesOption = new Option("files", true, "Analyze only the files listed in <path>, one per line");
+        filesOption.setArgName("path");
+        options.addOption(filesOption);
+
+        Option partialOption = new Option("partial", true, "Write the counts to <path> as a partial aggregate for the merge command instead of writing the report");
+        partialOption.setArgName("path");
+        options.addOption(partialOption);
+
+        Option pruneOption = new Option("prune", false, "Skip files whose first and last lines are outside -since and -until, for files with lines in time order");
+        options.addOption(pruneOption);
+
+        Option prunePatternOption = new Option("prunePattern", true, "Skip files whose name has a date outside -since and -until, e.g. yyyy-MM-dd for app-2020-01-30.log");
+        prunePatternOption.setArgName("pattern");
+        options.addOption(prunePatternOption);
+
+        Option cacheOption = new Option("cache", true, "Keep the counts of every file in <dir> and read only the files that changed since a run with the same parameters");
+        cacheOption.setArgName("dir");
+        options.addOption(cacheOption);
+
+        Option cacheSizeOption = new Option("cacheSize", true, "Delete the least recently used -cache entries above <MB> megabytes. Default is 256");
+        cacheSizeOption.setArgName("MB");
+        options.addOption(cacheSizeOption);
+
+        Option statsOption = new Option("stats", false, "Collect counters and timers, expose them through JMX and print them as JSON at the end");
+        options.addOption(statsOption);
+
+        Option formatOption = new Option("format", true, "Read lines in the layout defined in <file> instead of the one of format.txt");
+        formatOption.setArgName("file");
+        options.addOption(formatOption);
+
+        Option errorsOption = new Option("errors", true, "Write the counts of malformed lines by file and error type and the first lines of every file to <path>");
+        errorsOption.setArgName("path");
+        options.addOption(errorsOption);
+
+        return options;
     }
 
-    private static Map<String, Optional<?>> parseArguments(CommandLine cmd){
+    static Map<String, Optional<?>> parseArguments(CommandLine cmd) throws ParseException {
         Map<String, Optional<?>> result = new HashMap<>();
         Optional<String> usernameArgument = Optional.ofNullable(cmd.getOptionValue("username"));
         Optional<String> sinceArgument = Optional.ofNullable(cmd.getOptionValue("since"));
@@ -89,12 +260,38 @@ public class App
         Optional<String> gTimeArgument = Optional.ofNullable(cmd.getOptionValue("Gtime"));
         Optional<String> threadsArgument = Optional.ofNullable(cmd.getOptionValue("threads"));
         Optional<String> outputArgument = Optional.ofNullable(cmd.getOptionValue("output"));
+        Optional<Boolean> indexArgument = Optional.ofNullable(cmd.hasOption("index") ? true : null );
+        Optional<Boolean> incrementalArgument = Optional.ofNullable(cmd.hasOption("incremental") ? true : null );
+        Optional<Boolean> followArgument = Optional.ofNullable(cmd.hasOption("follow") ? true : null );
+        Optional<String> intervalArgument = Optional.ofNullable(cmd.getOptionValue("interval"));
+        Optional<String> ioThreadsArgument = Optional.ofNullable(cmd.getOptionValue("ioThreads"));
+        Optional<String> parseThreadsArgument = Optional.ofNullable(cmd.getOptionValue("parseThreads"));
+        Optional<Boolean> threadPerFileArgument = Optional.ofNullable(cmd.hasOption("threadPerFile") ? true : null );
+        Optional<String> openFilesArgument = Optional.ofNullable(cmd.getOptionValue("openFiles"));
+        Optional<String> shardArgument = Optional.ofNullable(cmd.getOptionValue("shard"));
+        Optional<String> filesArgument = Optional.ofNullable(cmd.getOptionValue("files"));
+        Optional<String> partialArgument = Optional.ofNullable(cmd.getOptionValue("partial"));
+        Optional<Boolean> pruneArgument = Optional.ofNullable(cmd.hasOption("prune") ? true : null );
+        Optional<String> prunePatternArgument = Optional.ofNullable(cmd.getOptionValue("prunePattern"));
+        Optional<String> cacheArgument = Optional.ofNullable(cmd.getOptionValue("cache"));
+        Optional<String> cacheSizeArgument = Optional.ofNullable(cmd.getOptionValue("cacheSize"));
+        Optional<String> topArgument = Optional.ofNullable(cmd.getOptionValue("top"));
+        Optional<Boolean> distinctArgument = Optional.ofNullable(cmd.hasOption("distinct") ? true : null );
+        Optional<Boolean> quantilesArgument = Optional.ofNullable(cmd.hasOption("quantiles") ? true : null );
+        Optional<Boolean> statsArgument = Optional.ofNullable(cmd.hasOption("stats") ? true : null );
+        Optional<String> errorsArgument = Optional.ofNullable(cmd.getOptionValue("errors"));
+        Optional<String> formatArgument = Optional.ofNullable(cmd.getOptionValue("format"));
+        Optional<String[]> fieldArgument = Optional.ofNullable(cmd.getOptionValues("field"));
+        Optional<String> gFieldArgument = Optional.ofNullable(cmd.getOptionValue("Gfield"));
+        Optional<ReportWriter.Format> outputFormat = parseOutputFormat(cmd.getOptionValue("outputFormat"));
 
         Optional<LocalDateTime> sinceDate = Optional.empty();
         Optional<LocalDateTime> untilDate = Optional.empty();
         Optional<Pattern> messagePattern = Optional.empty();
         Optional<ChronoUnit> gTimePeriod = Optional.empty();
         Optional<Integer> threads;
+        Optional<Integer> shardIndex = Optional.empty();
+        Optional<Integer> shardCount = Optional.empty();
 
         if (sinceArgument.isPresent()){
             try{
@@ -113,6 +310,34 @@ public class App
         if (messageArgument.isPresent()){
             messagePattern = Optional.of(Pattern.compile(messageArgument.get()));
         }
+        LogFormat format;
+        try {
+            format = formatArgument.isPresent() ? LogFormat.load(Paths.get(formatArgument.get())) : LogFormat.loadDefault();
+        } catch (IOException e) {
+            throw new ParseException("Cannot read format file " + formatArgument.orElse("format.txt") + ": " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+        Map<String, String> fieldFilters = new LinkedHashMap<>();
+        for(String filter: fieldArgument.orElse(new String[0])){
+            int equals = filter.indexOf('=');
+            if(equals <= 0 || format.fieldIndex(filter.substring(0, equals)) < 0){
+                throw new ParseException("-field should be <name>=<value> with a field of the format: " + format.getFieldNames());
+            }
+            fieldFilters.put(filter.substring(0, equals), filter.substring(equals + 1));
+        }
+        if (gFieldArgument.isPresent() && format.fieldIndex(gFieldArgument.get()) < 0){
+            throw new ParseException("-Gfield should name a field of the format: " + format.getFieldNames());
+        }
+        // Both are reported in the username column
+        if (gFieldArgument.isPresent() && gUsernameArgument.isPresent()){
+            throw new ParseException("-Gfield cannot be combined with -Gusername");
+        }
+        // The sketches count users, which would all be the same empty name
+        if (!format.hasUsername() && (usernameArgument.isPresent() || gUsernameArgument.isPresent()
+                || topArgument.isPresent() || distinctArgument.isPresent() || quantilesArgument.isPresent())){
+            throw new ParseException("-username, -Gusername, -top, -distinct and -quantiles need a format with a username");
+        }
         if (gTimeArgument.isPresent()){
             Matcher matcher = timeUnitPattern.matcher(gTimeArgument.get());
             if(matcher.find() && matcher.start() == 0 && matcher.end() == gTimeArgument.get().length()){
@@ -127,11 +352,67 @@ public class App
                 }
             }
         }
+        if (shardArgument.isPresent()){
+            Matcher matcher = shardPattern.matcher(shardArgument.get());
+            if(!matcher.matches() || Integer.parseInt(matcher.group(1)) >= Integer.parseInt(matcher.group(2))){
+                throw new ParseException("Shard should be <index>/<count> with 0 <= index < count");
+            }
+            shardIndex = Optional.of(Integer.parseInt(matcher.group(1)));
+            shardCount = Optional.of(Integer.parseInt(matcher.group(2)));
+        }
+        // Shards of one directory would overwrite each other's checkpoint
+        if (incrementalArgument.isPresent() && (shardArgument.isPresent() || filesArgument.isPresent())){
+            throw new ParseException("-incremental cannot be combined with -shard or -files");
+        }
+        if (distinctArgument.isPresent() && !gTimePeriod.isPresent()){
+            throw new ParseException("-distinct needs -Gtime to know the periods of time");
+        }
+        // -follow tails every file of the directory on one thread without indexes and only writes the report
+        if (followArgument.isPresent() && (indexArgument.isPresent() || partialArgument.isPresent() || ioThreadsArgument.isPresent()
+                || parseThreadsArgument.isPresent() || threadPerFileArgument.isPresent() || threadsArgument.isPresent()
+                || shardArgument.isPresent() || filesArgument.isPresent() || incrementalArgument.isPresent() || cacheArgument.isPresent())){
+            throw new ParseException("-follow cannot be combined with -index, -partial, -incremental, -cache, -shard, -files, -threads, -ioThreads, -parseThreads or -threadPerFile");
+        }
+        // Sketches are kept only for the duration of one run and are not written to partials or checkpoints
+        boolean sketches = topArgument.isPresent() || distinctArgument.isPresent() || quantilesArgument.isPresent();
+        if (sketches && (incrementalArgument.isPresent() || followArgument.isPresent() || partialArgument.isPresent())){
+            throw new ParseException("-top, -distinct and -quantiles cannot be combined with -incremental, -follow or -partial");
+        }
+        Optional<PartitionPruner.NamePattern> prunePattern;
+        try {
+            prunePattern = prunePatternArgument.map(PartitionPruner.NamePattern::compile);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+        // Growing files would have to be checked again on every pass
+        if ((pruneArgument.isPresent() || prunePattern.isPresent()) && followArgument.isPresent()){
+            throw new ParseException("-prune and -prunePattern cannot be combined with -follow");
+        }
+        // The cache keeps counts per file, the other modes read files in their own way
+        if (cacheArgument.isPresent() && (sketches || incrementalArgument.isPresent() || followArgument.isPresent()
+                || ioThreadsArgument.isPresent() || parseThreadsArgument.isPresent() || threadPerFileArgument.isPresent())){
+            throw new ParseException("-cache cannot be combined with -top, -distinct, -quantiles, -incremental, -follow or the -ioThreads, -parseThreads and -threadPerFile modes");
+        }
+        if (sketches && outputFormat.isPresent() && outputFormat.get() != ReportWriter.Format.TEXT){
+            throw new ParseException("-top, -distinct and -quantiles are only written in the text output format");
+        }
         int threadsNumber = Integer.parseInt(threadsArgument.orElse("1"));
         if (threadsNumber <= 0){
             threadsNumber = 1;
         }
         threads = Optional.of(threadsNumber);
+        int intervalSeconds = Integer.parseInt(intervalArgument.orElse("10"));
+        if (intervalSeconds <= 0){
+            intervalSeconds = 10;
+        }
+        long cacheMegabytes = Long.parseLong(cacheSizeArgument.orElse("256"));
+        if (cacheMegabytes <= 0){
+            cacheMegabytes = 256;
+        }
+        int openFilesNumber = Integer.parseInt(openFilesArgument.orElse("64"));
+        if (openFilesNumber <= 0){
+            openFilesNumber = 64;
+        }
 
         result.put("username", usernameArgument);
         result.put("since", sinceDate);
@@ -141,6 +422,31 @@ public class App
         result.put("Gtime", gTimePeriod);
         result.put("threads", threads);
         result.put("output", outputArgument);
+        result.put("index", indexArgument);
+        result.put("incremental", incrementalArgument);
+        result.put("follow", followArgument);
+        result.put("interval", Optional.of(intervalSeconds));
+        result.put("ioThreads", ioThreadsArgument.map(value -> Math.max(1, Integer.parseInt(value))));
+        result.put("parseThreads", parseThreadsArgument.map(value -> Math.max(1, Integer.parseInt(value))));
+        result.put("threadPerFile", threadPerFileArgument);
+        result.put("openFiles", Optional.of(openFilesNumber));
+        result.put("shardIndex", shardIndex);
+        result.put("shardCount", shardCount);
+        result.put("files", filesArgument);
+        result.put("partial", partialArgument);
+        result.put("prune", pruneArgument);
+        result.put("prunePattern", prunePattern);
+        result.put("cache", cacheArgument);
+        result.put("cacheSize", Optional.of(cacheMegabytes * 1024 * 1024));
+        result.put("top", topArgument.map(value -> Math.max(1, Integer.parseInt(value))));
+        result.put("distinct", distinctArgument);
+        result.put("quantiles", quantilesArgument);
+        result.put("stats", statsArgument);
+        result.put("errors", errorsArgument);
+        result.put("format", Optional.of(format));
+        result.put("field", fieldFilters.isEmpty() ? Optional.empty() : Optional.of(fieldFilters));
+        result.put("Gfield", gFieldArgument);
+        result.put("outputFormat", outputFormat);
         return result;
     }
 
@@ -153,13 +459,39 @@ public class App
         System.out.println("\t-since <date>       Filters records that are more recent than a specific date");
         System.out.println("\t-until <date>       Filters records that are older than a specific date");
         System.out.println("\t-message <pattern>  Filters records by message matching specified pattern (regular expression)");
+        System.out.println("\t-field <name=value> Filters records by the value of a field of the -format");
         System.out.println();
         System.out.println("grouping (at least one parameter should be specified):");
         System.out.println("\t-Gusername          Groups records by username");
         System.out.println("\t-Gtime <unit>       Groups records by period of time");
+        System.out.println("\t-Gfield <name>      Groups records by the value of a field of the -format");
+        System.out.println("\t-top <k>            Lists the <k> users with the most records (approximate)");
+        System.out.println("\t-distinct           Estimates the number of distinct users per -Gtime period of time");
+        System.out.println("\t-quantiles          Estimates quantiles of the number of records per user");
         System.out.println();
         System.out.println("processing:");
         System.out.println("\t-threads <n>        Use <n> number of threads");
         System.out.println("\t-output <path>      Path to output file");
+        System.out.println("\t-outputFormat <format> Write the output as text (the default), csv, json or binary");
+        System.out.println("\t-index              Use and build <file>.idx indexes to skip data that cannot match the filters");
+        System.out.println("\t-incremental        Read only data appended since the previous -incremental run");
+        System.out.println("\t-follow             Keep running, tail new and growing log files and rewrite the output periodically");
+        System.out.println("\t-interval <seconds> Rewrite the output every <seconds> seconds in -follow mode");
+        System.out.println("\t-ioThreads <n>      Read files with <n> threads and parse them in separate threads");
+        System.out.println("\t-parseThreads <n>   Parse and filter lines with <n> threads while other threads read the files");
+        System.out.println("\t-threadPerFile      Read every file on its own thread");
+        System.out.println("\t-openFiles <n>      Read at most <n> files at once in -threadPerFile mode");
+        System.out.println("\t-shard <index/count> Analyze only one shard of the files");
+        System.out.println("\t-files <path>       Analyze only the files listed in <path>");
+        System.out.println("\t-partial <path>     Write a partial aggregate for the merge command instead of the report");
+        System.out.println("\t-prune              Skip files whose first and last lines are outside -since and -until");
+        System.out.println("\t-prunePattern <pattern> Skip files whose name has a date outside -since and -until, e.g. yyyy-MM-dd");
+        System.out.println("\t-cache <dir>        Keep per file counts in <dir> and read only the files that changed since the last run");
+        System.out.println("\t-cacheSize <MB>     Keep at most <MB> megabytes of -cache entries");
+        System.out.println("\t-stats              Collect counters and timers, expose them through JMX and print them as JSON");
+        System.out.println("\t-format <file>      Read lines in the layout defined in <file> instead of format.txt");
+        System.out.println("\t-errors <path>      Write malformed line counts by file and error type and sample lines to <path>");
+        System.out.println();
+        System.out.println("usage: log-analysis merge [-output <path>] [-outputFormat <format>] [-partial <path>] <partial>...");
     }
 }
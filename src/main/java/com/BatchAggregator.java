@@ -0,0 +1,86 @@
+package com;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Adds batches that share one username dictionary to a container; counts are kept by username id until flush()
+public class BatchAggregator<T extends Map> {
+
+    private final T container;
+    private final EnumSet<GroupingOptions> groupingOptions;
+    private final TimeBucketer timeBucketer;
+
+    private UsernameDictionary usernames;
+    private long[] usernameRecordsCount = new long[0];
+    private Map<LocalDateTime, Long>[] usernamePeriodRecordsCount = new Map[0];
+
+    BatchAggregator(T container, EnumSet<GroupingOptions> groupingOptions, ChronoUnit timeUnit){
+        this.container = container;
+        this.groupingOptions = groupingOptions;
+        this.timeBucketer = groupingOptions.contains(GroupingOptions.TIMEUNIT) ? new TimeBucketer(timeUnit) : null;
+    }
+
+    public void add(LogEntryBatch batch){
+        usernames = batch.getUsernames();
+        if(groupingOptions.contains(GroupingOptions.TIMEUNIT)){
+            if(groupingOptions.contains(GroupingOptions.USERNAME)){
+                groupByUsernameAndDate(batch);
+            } else {
+                groupByDate(batch);
+            }
+        } else if(groupingOptions.contains(GroupingOptions.USERNAME)){
+            groupByUsername(batch);
+        }
+    }
+
+    // Moves the counts kept by username id into the container
+    public void flush(){
+        if(groupingOptions.equals(EnumSet.of(GroupingOptions.USERNAME))){
+            Map<String, Long> recordsCount = container;
+            for(int id = 0; id < usernameRecordsCount.length; id++){
+                if(usernameRecordsCount[id] > 0){
+                    recordsCount.merge(usernames.get(id), usernameRecordsCount[id], Long::sum);
+                }
+            }
+            Arrays.fill(usernameRecordsCount, 0);
+        }
+    }
+
+    private void groupByUsernameAndDate(LogEntryBatch batch) {
+        Map<String, Map<LocalDateTime, Long>> recordsCount = container;
+        if(usernamePeriodRecordsCount.length < batch.getUsernames().size()){
+            usernamePeriodRecordsCount = Arrays.copyOf(usernamePeriodRecordsCount, batch.getUsernames().size());
+        }
+        for(int i = 0; i < batch.size(); i++){
+            int id = batch.getUsernameId(i);
+            if(usernamePeriodRecordsCount[id] == null){
+                usernamePeriodRecordsCount[id] = recordsCount.computeIfAbsent(batch.getUsername(i), key -> new HashMap<>());
+            }
+            usernamePeriodRecordsCount[id].merge(timeBucketer.bucketOf(batch.getEpochSecond(i)), 1L, Long::sum);
+        }
+    }
+
+    private void groupByDate(LogEntryBatch batch) {
+        Map<LocalDateTime, Long> periodRecordsCount = container;
+        int i = 0;
+        while(i < batch.size()){
+            LocalDateTime bucket = timeBucketer.bucketOf(batch.getEpochSecond(i));
+            long count = 0;
+            while(i < batch.size() && timeBucketer.bucketOf(batch.getEpochSecond(i)) == bucket){
+                count++;
+                i++;
+            }
+            periodRecordsCount.merge(bucket, count, Long::sum);
+        }
+    }
+
+    private void groupByUsername(LogEntryBatch batch) {
+        if(usernameRecordsCount.length < batch.getUsernames().size()){
+            usernameRecordsCount = Arrays.copyOf(usernameRecordsCount, batch.getUsernames().size());
+        }
+        for(int i = 0; i < batch.size(); i++){
+            usernameRecordsCount[batch.getUsernameId(i)]++;
+        }
+    }
+}
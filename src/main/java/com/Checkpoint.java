@@ -0,0 +1,178 @@
+package com;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// State saved by -incremental runs: how far every file was read and the counts collected so far. Files are known by
+// their file key (the inode on Unix) rather than by name, so a log renamed by rotation is not read again from the start,
+// and by a fingerprint of their first bytes, which tells a reused inode apart and finds the log a compressed file was
+// made of by rotation
+public class Checkpoint {
+
+    public static final String FILE_NAME = ".log-analysis.checkpoint";
+
+    private static final int MAGIC = 0x4c434b50;
+    private static final int VERSION = 3;
+    private static final int FINGERPRINT_SIZE = 1024;
+
+    private final String argumentsKey;
+    private final Map<String, FileState> files;
+    private final Map container;
+
+    public Checkpoint(String argumentsKey, Map<String, FileState> files, Map container){
+        this.argumentsKey = argumentsKey;
+        this.files = files;
+        this.container = container;
+    }
+
+    public Map<String, FileState> getFiles(){
+        return this.files;
+    }
+
+    public Map getContainer(){
+        return this.container;
+    }
+
+    // Offset to continue from, or 0 when the file is new, got shorter than it was in the last run, as after a copy and
+    // truncate rotation, or does not start with the same bytes any more, as when its inode was reused
+    public long resumeOffset(Path file, Object fileKey, long size) throws IOException {
+        FileState state = files.get(stateKey(file, fileKey));
+        if(state == null || size < state.size || fingerprint(head(file), state.offset) != state.fingerprint){
+            return 0;
+        }
+        return state.offset;
+    }
+
+    // Inflated bytes of a new compressed file that were read when it was still an uncompressed log, 0 when it was not one
+    public long countedPrefix(Path compressedFile) throws IOException {
+        byte[] head = head(compressedFile);
+        long counted = 0;
+        for(FileState state: files.values()){
+            if(!state.compressed && state.offset > counted && fingerprint(head, state.offset) == state.fingerprint){
+                counted = state.offset;
+            }
+        }
+        return counted;
+    }
+
+    // The state of a file read up to offset
+    public static FileState stateOf(Path file, long offset, long size) throws IOException {
+        return new FileState(offset, size, fingerprint(head(file), offset), file.toString().endsWith(CompressedLogReader.SUFFIX));
+    }
+
+    // Hash of the first bytes of the content that were read, up to FINGERPRINT_SIZE
+    private static long fingerprint(byte[] head, long offset){
+        int length = (int)Math.min(head.length, offset);
+        return ActivitySketches.hash(ByteBuffer.wrap(head), 0, length);
+    }
+
+    // The first FINGERPRINT_SIZE bytes of the content, inflated for compressed files
+    private static byte[] head(Path file) throws IOException {
+        try(InputStream input = file.toString().endsWith(CompressedLogReader.SUFFIX)
+                ? new GZIPInputStream(Files.newInputStream(file)) : Files.newInputStream(file)){
+            return input.readNBytes(FINGERPRINT_SIZE);
+        }
+    }
+
+    // The file key, or the path on file systems that have none
+    public static String stateKey(Path file, Object fileKey){
+        return fileKey == null ? "path:" + file : "key:" + fileKey;
+    }
+
+    // The counts are only reused when they were collected with the same filters and grouping
+    public static String argumentsKey(Map<String, Optional<?>> arguments){
+        StringBuilder key = new StringBuilder();
+        key.append("username=").append(arguments.get("username").orElse(null));
+        key.append("\nsince=").append(arguments.get("since").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(null));
+        key.append("\nuntil=").append(arguments.get("until").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(null));
+        key.append("\nmessage=").append(arguments.get("message").map(value -> ((Pattern)value).pattern()).orElse(null));
+        key.append("\nGusername=").append(arguments.get("Gusername").isPresent());
+        key.append("\nGtime=").append(arguments.get("Gtime").map(value -> ((ChronoUnit)value).name()).orElse(null));
+        key.append("\nformat=").append(LogFormat.of(arguments).getDefinition());
+        key.append("\nfield=").append(arguments.get("field").orElse(null));
+        key.append("\nGfield=").append(arguments.get("Gfield").orElse(null));
+        return key.toString();
+    }
+
+    // Returns null when there is no checkpoint or it was written for other arguments
+    public static Checkpoint load(Path path, String argumentsKey, EnumSet<GroupingOptions> groupingOptions){
+        if(!Files.isRegularFile(path)){
+            return null;
+        }
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))){
+            if(input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(argumentsKey)){
+                return null;
+            }
+            int filesCount = input.readInt();
+            Map<String, FileState> files = new HashMap<>();
+            for(int i = 0; i < filesCount; i++){
+                String key = input.readUTF();
+                files.put(key, new FileState(input.readLong(), input.readLong(), input.readLong(), input.readBoolean()));
+            }
+            return new Checkpoint(argumentsKey, files, ContainerIO.read(input, groupingOptions));
+        } catch (IOException e) {
+            System.err.println("Cannot read checkpoint " + path + ", analyzing all files again");
+            return null;
+        }
+    }
+
+    public void write(Path path, EnumSet<GroupingOptions> groupingOptions) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(argumentsKey);
+            output.writeInt(files.size());
+            for(Map.Entry<String, FileState> file: files.entrySet()){
+                output.writeUTF(file.getKey());
+                output.writeLong(file.getValue().offset);
+                output.writeLong(file.getValue().size);
+                output.writeLong(file.getValue().fingerprint);
+                output.writeBoolean(file.getValue().compressed);
+            }
+            ContainerIO.write(output, container, groupingOptions);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class FileState {
+        private final long offset;
+        // Size of the file when it was read up to offset
+        private final long size;
+        private final long fingerprint;
+        // The offset of a compressed file is its size, it is either read as a whole or not at all
+        private final boolean compressed;
+
+        public FileState(long offset, long size, long fingerprint, boolean compressed){
+            this.offset = offset;
+            this.size = size;
+            this.fingerprint = fingerprint;
+            this.compressed = compressed;
+        }
+
+        public long getOffset(){
+            return this.offset;
+        }
+
+        public long getSize(){
+            return this.size;
+        }
+
+        public long getFingerprint(){
+            return this.fingerprint;
+        }
+
+        public boolean isCompressed(){
+            return this.compressed;
+        }
+    }
+}
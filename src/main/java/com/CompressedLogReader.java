@@ -0,0 +1,87 @@
+package com;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reads .log.gz files: a separate thread inflates the file into whole-line blocks while the caller parses the previous ones
+public class CompressedLogReader extends LogReader {
+
+    public static final String SUFFIX = ".gz";
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int QUEUED_BLOCKS = 4;
+
+    public CompressedLogReader(LogLineParser parser, UsernameDictionary usernames){
+        super(parser, usernames);
+    }
+
+    public static boolean isCompressed(FileChunk chunk){
+        return chunk.getFile().toString().endsWith(SUFFIX);
+    }
+
+    // A compressed file is read as a whole but for the lines the chunk skips, the chunk only names the file
+    @Override
+    public void read(FileChunk chunk, Handler handler) throws IOException {
+        BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+        Inflater inflater = new Inflater(chunk, blocks);
+        Thread thread = new Thread(inflater, "inflate " + chunk.getFile().getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            while(true){
+                Block block = blocks.take();
+                if(block.error != null){
+                    throw block.error;
+                }
+                if(block.lines == null){
+                    break;
+                }
+                read(block.lines, handler);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + chunk.getFile(), e);
+        } finally {
+            thread.interrupt();
+        }
+    }
+
+    private static class Block {
+        private final LineBlock lines;
+        private final IOException error;
+
+        Block(LineBlock lines, IOException error){
+            this.lines = lines;
+            this.error = error;
+        }
+    }
+
+    private static class Inflater implements Runnable {
+        private final FileChunk chunk;
+        private final BlockingQueue<Block> blocks;
+
+        Inflater(FileChunk chunk, BlockingQueue<Block> blocks){
+            this.chunk = chunk;
+            this.blocks = blocks;
+        }
+
+        // Blocks are not reused: the caller may still be parsing one while the next ones are inflated
+        @Override
+        public void run() {
+            try {
+                try(LineBlockReader blockReader = new LineBlockReader(chunk)){
+                    LineBlock block = new LineBlock(BLOCK_SIZE);
+                    while(blockReader.read(block)){
+                        blocks.put(new Block(block, null));
+                        block = new LineBlock(BLOCK_SIZE);
+                    }
+                    blocks.put(new Block(null, null));
+                } catch (IOException e) {
+                    blocks.put(new Block(null, e));
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+// Binary form of the grouping containers; periods are stored as epoch seconds
+public class ContainerIO {
+
+    public static void write(DataOutput output, Map container, EnumSet<GroupingOptions> groupingOptions) throws IOException {
+        if(groupingOptions.contains(GroupingOptions.USERNAME) && groupingOptions.contains(GroupingOptions.TIMEUNIT)){
+            Map<String, Map<LocalDateTime, Long>> recordsCount = container;
+            output.writeInt(recordsCount.size());
+            for(Map.Entry<String, Map<LocalDateTime, Long>> user: recordsCount.entrySet()){
+                output.writeUTF(user.getKey());
+                writePeriods(output, user.getValue());
+            }
+        } else if(groupingOptions.contains(GroupingOptions.USERNAME)){
+            Map<String, Long> recordsCount = container;
+            output.writeInt(recordsCount.size());
+            for(Map.Entry<String, Long> user: recordsCount.entrySet()){
+                output.writeUTF(user.getKey());
+                output.writeLong(user.getValue());
+            }
+        } else {
+            writePeriods(output, container);
+        }
+    }
+
+    public static Map read(DataInput input, EnumSet<GroupingOptions> groupingOptions) throws IOException {
+        Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        if(groupingOptions.contains(GroupingOptions.USERNAME) && groupingOptions.contains(GroupingOptions.TIMEUNIT)){
+            Map<String, Map<LocalDateTime, Long>> recordsCount = container;
+            int size = input.readInt();
+            for(int i = 0; i < size; i++){
+                String user = input.readUTF();
+                Map<LocalDateTime, Long> periodRecordsCount = new HashMap<>();
+                readPeriods(input, periodRecordsCount);
+                recordsCount.put(user, periodRecordsCount);
+            }
+        } else if(groupingOptions.contains(GroupingOptions.USERNAME)){
+            Map<String, Long> recordsCount = container;
+            int size = input.readInt();
+            for(int i = 0; i < size; i++){
+                recordsCount.put(input.readUTF(), input.readLong());
+            }
+        } else {
+            readPeriods(input, container);
+        }
+        return container;
+    }
+
+    private static void writePeriods(DataOutput output, Map<LocalDateTime, Long> periodRecordsCount) throws IOException {
+        output.writeInt(periodRecordsCount.size());
+        for(Map.Entry<LocalDateTime, Long> period: periodRecordsCount.entrySet()){
+            output.writeLong(period.getKey().toEpochSecond(ZoneOffset.UTC));
+            output.writeLong(period.getValue());
+        }
+    }
+
+    private static void readPeriods(DataInput input, Map<LocalDateTime, Long> periodRecordsCount) throws IOException {
+        int size = input.readInt();
+        for(int i = 0; i < size; i++){
+            periodRecordsCount.put(LocalDateTime.ofEpochSecond(input.readLong(), 0, ZoneOffset.UTC), input.readLong());
+        }
+    }
+}
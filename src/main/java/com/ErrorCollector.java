@@ -0,0 +1,98 @@
+package com;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The malformed lines and unreadable files met by one worker: counts by file and error type and the first samples of
+// every file. Adding an error only touches memory; the worker hands the collector to the ErrorReport when it is done
+public class ErrorCollector {
+
+    static final int SAMPLES_PER_FILE = 10;
+
+    private Map<Path, FileErrors> files = new HashMap<>();
+    private Path lastFile;
+    private FileErrors lastErrors;
+
+    public void add(FileChunk chunk, long lineNumber, ErrorType type){
+        FileErrors errors = errorsOf(chunk.getFile());
+        errors.counts[type.ordinal()]++;
+        if(errors.samples.size() < SAMPLES_PER_FILE){
+            errors.samples.add("line " + lineNumber + " in " + location(chunk) + ": " + type.getDescription());
+        }
+    }
+
+    public void addUnreadable(FileChunk chunk, Exception e){
+        addUnreadable(chunk.getFile(), location(chunk), e);
+    }
+
+    public void addUnreadable(Path file, Exception e){
+        addUnreadable(file, file.toString(), e);
+    }
+
+    private void addUnreadable(Path file, String location, Exception e){
+        FileErrors errors = errorsOf(file);
+        errors.counts[ErrorType.UNREADABLE_FILE.ordinal()]++;
+        if(errors.samples.size() < SAMPLES_PER_FILE){
+            errors.samples.add(location + ": " + ErrorType.UNREADABLE_FILE.getDescription() + " (" + e + ")");
+        }
+    }
+
+    public boolean isEmpty(){
+        return files.isEmpty();
+    }
+
+    // Hands the errors collected so far over and starts again empty
+    public Map<Path, FileErrors> drain(){
+        Map<Path, FileErrors> drained = files;
+        files = new HashMap<>();
+        lastFile = null;
+        lastErrors = null;
+        return drained;
+    }
+
+    private FileErrors errorsOf(Path file){
+        if(!file.equals(lastFile)){
+            lastFile = file;
+            lastErrors = files.computeIfAbsent(file, key -> new FileErrors());
+        }
+        return lastErrors;
+    }
+
+    private static String location(FileChunk chunk){
+        return chunk.getStart() == 0 ? chunk.getFile().toString() : chunk.toString();
+    }
+
+    public static class FileErrors {
+        private final long[] counts = new long[ErrorType.values().length];
+        private final List<String> samples = new ArrayList<>();
+
+        public long getCount(ErrorType type){
+            return counts[type.ordinal()];
+        }
+
+        public long getTotal(){
+            long total = 0;
+            for(long count: counts){
+                total += count;
+            }
+            return total;
+        }
+
+        public List<String> getSamples(){
+            return this.samples;
+        }
+
+        // Adds the counts of other and returns the samples that were kept
+        List<String> merge(FileErrors other){
+            for(int i = 0; i < counts.length; i++){
+                counts[i] += other.counts[i];
+            }
+            List<String> kept = other.samples.subList(0, Math.min(other.samples.size(), SAMPLES_PER_FILE - samples.size()));
+            samples.addAll(kept);
+            return kept;
+        }
+    }
+}
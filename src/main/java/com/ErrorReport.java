@@ -0,0 +1,137 @@
+package com;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Gathers the errors of every worker on a thread of its own, so that no worker waits for the console or a file. Samples
+// go to the -errors file as they come; summarize() sums the errors up on stderr and in the file, then starts counting again
+public class ErrorReport {
+
+    private static final int SUMMARY_FILES = 20;
+
+    private static volatile ErrorReport current;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "errors");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Path, ErrorCollector.FileErrors> files = new TreeMap<>();
+    private final BufferedWriter dump;
+
+    private ErrorReport(BufferedWriter dump){
+        this.dump = dump;
+    }
+
+    // The report of this process, or null before start()
+    public static ErrorReport current(){
+        return current;
+    }
+
+    // dumpPath is the -errors file, or null to only print the summary
+    public static ErrorReport start(Path dumpPath) throws IOException {
+        current = new ErrorReport(dumpPath == null ? null : Files.newBufferedWriter(dumpPath));
+        return current;
+    }
+
+    // Takes the errors of a worker; the collector is empty afterwards and can be reused
+    public void add(ErrorCollector collector){
+        if(collector.isEmpty()){
+            return;
+        }
+        Map<Path, ErrorCollector.FileErrors> drained = collector.drain();
+        writer.execute(() -> merge(drained));
+    }
+
+    // Prints the errors since the last summary without waiting for it, for runs that go on
+    public void summarize(){
+        writer.execute(() -> summarize(System.err));
+    }
+
+    // Prints the last summary once every worker's errors are in, and closes the -errors file
+    public void close() throws InterruptedException, IOException {
+        summarize();
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if(dump != null){
+            dump.close();
+        }
+    }
+
+    private void merge(Map<Path, ErrorCollector.FileErrors> drained){
+        drained.forEach((file, errors) -> {
+            List<String> kept = files.computeIfAbsent(file, key -> new ErrorCollector.FileErrors()).merge(errors);
+            for(String sample: kept){
+                write(sample);
+            }
+        });
+    }
+
+    private void summarize(PrintStream out){
+        if(files.isEmpty()){
+            return;
+        }
+        long malformedLines = 0;
+        int unreadableFiles = 0;
+        for(ErrorCollector.FileErrors errors: files.values()){
+            malformedLines += errors.getTotal() - errors.getCount(ErrorType.UNREADABLE_FILE);
+            if(errors.getCount(ErrorType.UNREADABLE_FILE) > 0){
+                unreadableFiles++;
+            }
+        }
+        out.println("Skipped " + malformedLines + " malformed lines" + (unreadableFiles > 0 ? " and " + unreadableFiles + " unreadable files" : "")
+                + " in " + files.size() + " files" + (dump != null ? ", samples are in the errors file" : ""));
+        List<Map.Entry<Path, ErrorCollector.FileErrors>> byTotal = new ArrayList<>(files.entrySet());
+        byTotal.sort(Comparator.comparingLong((Map.Entry<Path, ErrorCollector.FileErrors> entry) -> entry.getValue().getTotal()).reversed());
+        for(int i = 0; i < byTotal.size(); i++){
+            String line = describe(byTotal.get(i).getKey(), byTotal.get(i).getValue());
+            if(i < SUMMARY_FILES){
+                out.println("\t" + line);
+                out.println("\t\tfirst: " + byTotal.get(i).getValue().getSamples().get(0));
+            }
+            write(line);
+        }
+        if(byTotal.size() > SUMMARY_FILES){
+            out.println("\t... and " + (byTotal.size() - SUMMARY_FILES) + " more files");
+        }
+        files.clear();
+        if(dump != null){
+            try {
+                dump.flush();
+            } catch (IOException e) {
+                out.println("Cannot write errors file: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String describe(Path file, ErrorCollector.FileErrors errors){
+        StringBuilder line = new StringBuilder(file.toString()).append(":");
+        String separator = " ";
+        for(ErrorType type: ErrorType.values()){
+            if(errors.getCount(type) > 0){
+                line.append(separator).append(errors.getCount(type)).append(" ").append(type.getDescription());
+                separator = ", ";
+            }
+        }
+        return line.toString();
+    }
+
+    private void write(String line){
+        if(dump == null){
+            return;
+        }
+        try {
+            dump.write(line);
+            dump.newLine();
+        } catch (IOException e) {
+            System.err.println("Cannot write errors file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com;
+
+// Why a line or a file could not be read
+public enum ErrorType {
+    SHORT_LINE("line too short"),
+    TIMESTAMP("bad timestamp"),
+    USERNAME("bad username"),
+    SEPARATOR("missing separator"),
+    FIELD("bad field"),
+    UNREADABLE_FILE("unreadable file");
+
+    private final String description;
+
+    ErrorType(String description){
+        this.description = description;
+    }
+
+    public String getDescription(){
+        return this.description;
+    }
+}
@@ -0,0 +1,125 @@
+package com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileChunk {
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final Path file;
+    private final long start;
+    private final long end;
+    // Inflated bytes at the start of a compressed file that were already counted, before it was compressed by rotation
+    private final long skipped;
+
+    public FileChunk(Path file, long start, long end){
+        this(file, start, end, 0);
+    }
+
+    public FileChunk(Path file, long start, long end, long skipped){
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.skipped = skipped;
+    }
+
+    public Path getFile(){
+        return this.file;
+    }
+
+    public long getStart(){
+        return this.start;
+    }
+
+    public long getEnd(){
+        return this.end;
+    }
+
+    public long getSkipped(){
+        return this.skipped;
+    }
+
+    public long length(){
+        return this.end - this.start;
+    }
+
+    public static List<FileChunk> split(Path file, long size, long chunkSize) throws IOException {
+        return split(file, 0, size, chunkSize);
+    }
+
+    // Every chunk but the last one ends right after a line feed, so no line is shared between two chunks
+    public static List<FileChunk> split(Path file, long start, long end, long chunkSize) throws IOException {
+        List<FileChunk> chunks = new ArrayList<>();
+        if(end - start <= chunkSize){
+            if(end > start){
+                chunks.add(new FileChunk(file, start, end));
+            }
+            return chunks;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            while(start < end){
+                long chunkEnd = start + chunkSize >= end ? end : nextLineStart(channel, buffer, start + chunkSize, end);
+                chunks.add(new FileChunk(file, start, chunkEnd));
+                start = chunkEnd;
+            }
+        }
+        return chunks;
+    }
+
+    // End of the last complete line in [start, size), so a line that is still being written is left for later
+    public static long lastLineEnd(Path file, long start, long size) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            long position = size;
+            while(position > start){
+                int length = (int)Math.min(SCAN_BUFFER_SIZE, position - start);
+                buffer.clear();
+                buffer.limit(length);
+                int read = 0;
+                while(read < length){
+                    int count = channel.read(buffer, position - length + read);
+                    if(count < 0){
+                        break;
+                    }
+                    read += count;
+                }
+                for(int i = read - 1; i >= 0; i--){
+                    if(buffer.get(i) == '\n'){
+                        return position - length + i + 1;
+                    }
+                }
+                position -= length;
+            }
+        }
+        return start;
+    }
+
+    private static long nextLineStart(FileChannel channel, ByteBuffer buffer, long position, long size) throws IOException {
+        while(position < size){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read <= 0){
+                break;
+            }
+            for(int i = 0; i < read; i++){
+                if(buffer.get(i) == '\n'){
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return file + " [" + start + ", " + end + ")";
+    }
+}
@@ -0,0 +1,178 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+// Filters compiled once per worker and checked cheapest first on the raw line: timestamp, username and field bytes, message
+public class FilterPlan {
+
+    private enum LiteralMatch { EQUALS, STARTS_WITH, ENDS_WITH, CONTAINS }
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final long since;
+    private final long until;
+    private final byte[] username;
+    // -field filters: the index of each field in the LogFormat and the value it should have
+    private final int[] fields;
+    private final byte[][] fieldValues;
+    private final Pattern messagePattern;
+    private final byte[] literal;
+    private final LiteralMatch literalMatch;
+    // Rejections by filter since the last flushRejections()
+    private long sinceRejections;
+    private long untilRejections;
+    private long usernameRejections;
+    private long fieldRejections;
+    private long messageRejections;
+
+    public FilterPlan(Map<String, Optional<?>> arguments){
+        this.since = arguments.get("since").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(Long.MIN_VALUE);
+        this.until = arguments.get("until").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(Long.MAX_VALUE);
+        this.username = arguments.get("username").map(value -> ((String)value).getBytes(StandardCharsets.UTF_8)).orElse(null);
+        this.messagePattern = (Pattern)arguments.get("message").orElse(null);
+        Map<?, ?> fieldFilters = arguments.get("field").map(value -> (Map<?, ?>)value).orElse(Collections.emptyMap());
+        LogFormat format = LogFormat.of(arguments);
+        this.fields = new int[fieldFilters.size()];
+        this.fieldValues = new byte[fieldFilters.size()][];
+        int field = 0;
+        for(Map.Entry<?, ?> filter: fieldFilters.entrySet()){
+            fields[field] = format.fieldIndex((String)filter.getKey());
+            fieldValues[field++] = ((String)filter.getValue()).getBytes(StandardCharsets.UTF_8);
+        }
+
+        String literalPattern = null;
+        LiteralMatch match = null;
+        if(messagePattern != null && messagePattern.flags() == 0){
+            String pattern = messagePattern.pattern();
+            boolean leadingWildcard = pattern.startsWith(".*");
+            boolean trailingWildcard = pattern.length() >= (leadingWildcard ? 4 : 2) && pattern.endsWith(".*") && !pattern.endsWith("\\.*");
+            String core = pattern.substring(leadingWildcard ? 2 : 0, pattern.length() - (trailingWildcard ? 2 : 0));
+            if(!core.isEmpty() && isLiteral(core)){
+                literalPattern = core;
+                match = leadingWildcard ? (trailingWildcard ? LiteralMatch.CONTAINS : LiteralMatch.ENDS_WITH)
+                        : (trailingWildcard ? LiteralMatch.STARTS_WITH : LiteralMatch.EQUALS);
+            }
+        }
+        this.literal = literalPattern == null ? null : literalPattern.getBytes(StandardCharsets.UTF_8);
+        this.literalMatch = match;
+    }
+
+    public boolean test(RawLogEntry entry){
+        long epochSecond = entry.getEpochSecond();
+        if(epochSecond <= since){
+            sinceRejections++;
+            return false;
+        }
+        if(epochSecond >= until){
+            untilRejections++;
+            return false;
+        }
+        if(username != null && !bytesEqual(entry.getBuffer(), entry.getUsernameStart(), entry.getUsernameEnd(), username)){
+            usernameRejections++;
+            return false;
+        }
+        for(int i = 0; i < fields.length; i++){
+            if(!bytesEqual(entry.getBuffer(), entry.getFieldStart(fields[i]), entry.getFieldEnd(fields[i]), fieldValues[i])){
+                fieldRejections++;
+                return false;
+            }
+        }
+        if(messagePattern == null){
+            return true;
+        }
+        if(literal != null){
+            int found = findLiteral(entry.getBuffer(), entry.getMessageStart(), entry.getMessageEnd());
+            if(found < 0){
+                messageRejections++;
+                return false;
+            }
+            // '.' does not match line terminators, so only plain ASCII messages can skip the regex
+            if(isPlainAscii(entry.getBuffer(), entry.getMessageStart(), entry.getMessageEnd())){
+                return true;
+            }
+        }
+        if(!messagePattern.matcher(entry.getMessage()).matches()){
+            messageRejections++;
+            return false;
+        }
+        return true;
+    }
+
+    public void flushRejections(AnalysisStats stats){
+        stats.addRejections("since", sinceRejections);
+        stats.addRejections("until", untilRejections);
+        stats.addRejections("username", usernameRejections);
+        stats.addRejections("field", fieldRejections);
+        stats.addRejections("message", messageRejections);
+        sinceRejections = 0;
+        untilRejections = 0;
+        usernameRejections = 0;
+        fieldRejections = 0;
+        messageRejections = 0;
+    }
+
+    private static boolean bytesEqual(ByteBuffer buffer, int start, int end, byte[] value){
+        if(end - start != value.length){
+            return false;
+        }
+        for(int i = 0; i < value.length; i++){
+            if(buffer.get(start + i) != value[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Position of the literal that satisfies the match kind, or -1
+    private int findLiteral(ByteBuffer buffer, int start, int end){
+        int length = end - start;
+        switch(literalMatch){
+            case EQUALS: return length == literal.length && regionMatches(buffer, start) ? start : -1;
+            case STARTS_WITH: return length >= literal.length && regionMatches(buffer, start) ? start : -1;
+            case ENDS_WITH: return length >= literal.length && regionMatches(buffer, end - literal.length) ? end - literal.length : -1;
+            default:
+                byte first = literal[0];
+                for(int i = start; i <= end - literal.length; i++){
+                    if(buffer.get(i) == first && regionMatches(buffer, i)){
+                        return i;
+                    }
+                }
+                return -1;
+        }
+    }
+
+    private boolean regionMatches(ByteBuffer buffer, int position){
+        for(int i = 1; i < literal.length; i++){
+            if(buffer.get(position + i) != literal[i]){
+                return false;
+            }
+        }
+        return buffer.get(position) == literal[0];
+    }
+
+    private static boolean isPlainAscii(ByteBuffer buffer, int start, int end){
+        for(int i = start; i < end; i++){
+            byte b = buffer.get(i);
+            if(b < 0 || b == '\r' || b == '\n'){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLiteral(String pattern){
+        for(int i = 0; i < pattern.length(); i++){
+            if(REGEX_METACHARACTERS.indexOf(pattern.charAt(i)) >= 0){
+                return false;
+            }
+        }
+        return true;
+    }
+}
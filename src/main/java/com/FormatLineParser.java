@@ -0,0 +1,163 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Parses the lines of a LogFormat. The definition is compiled into flat arrays of steps and timestamp offsets, so a
+// line costs a walk over a few steps and byte comparisons, like the hand-written LogLineParser
+public class FormatLineParser extends LogLineParser {
+
+    private static final int TIMESTAMP = LogFormat.StepKind.TIMESTAMP.ordinal();
+    private static final int LITERAL = LogFormat.StepKind.LITERAL.ordinal();
+    private static final int USERNAME = LogFormat.StepKind.USERNAME.ordinal();
+    private static final int FIELD = LogFormat.StepKind.FIELD.ordinal();
+
+    private final int[] kinds;
+    private final byte[][] literals;
+    private final int[] fieldIndexes;
+    private final int minLength;
+    private final int groupField;
+    // Start and end of every extra field of the last line
+    private final int[] fields;
+
+    private final int timestampWidth;
+    private final int year;
+    private final int month;
+    private final int day;
+    private final int hour;
+    private final int minute;
+    private final int second;
+    private final int fraction;
+    private final int fractionDigits;
+    private final int[] separatorOffsets;
+    private final byte[] separators;
+
+    FormatLineParser(LogFormat format, int groupField){
+        List<LogFormat.Step> steps = format.getSteps();
+        this.kinds = new int[steps.size()];
+        this.literals = new byte[steps.size()][];
+        this.fieldIndexes = new int[steps.size()];
+        for(int i = 0; i < steps.size(); i++){
+            kinds[i] = steps.get(i).kind.ordinal();
+            literals[i] = steps.get(i).literal;
+            fieldIndexes[i] = steps.get(i).field;
+        }
+        this.minLength = format.getMinLength();
+        this.groupField = groupField;
+        this.fields = new int[format.getFieldNames().size() * 2];
+
+        LogFormat.TimestampLayout layout = format.getTimestamp();
+        this.timestampWidth = layout.width;
+        this.year = layout.year;
+        this.month = layout.month;
+        this.day = layout.day;
+        this.hour = layout.hour;
+        this.minute = layout.minute;
+        this.second = layout.second;
+        this.fraction = layout.fraction;
+        this.fractionDigits = layout.fractionDigits;
+        this.separatorOffsets = layout.separatorOffsets.stream().mapToInt(Integer::intValue).toArray();
+        this.separators = new byte[layout.separators.size()];
+        for(int i = 0; i < separators.length; i++){
+            separators[i] = layout.separators.get(i);
+        }
+    }
+
+    @Override
+    public boolean parse(ByteBuffer buffer, int start, int end, RawLogEntry entry){
+        if(end - start < minLength){
+            return fail(ErrorType.SHORT_LINE);
+        }
+        long epochSecond = Long.MIN_VALUE;
+        int usernameStart = start;
+        int usernameEnd = start;
+        int messageStart = end;
+        int position = start;
+        for(int step = 0; step < kinds.length; step++){
+            int kind = kinds[step];
+            if(kind == TIMESTAMP){
+                epochSecond = end - position < timestampWidth ? Long.MIN_VALUE : readTimestamp(buffer, position);
+                if(epochSecond == Long.MIN_VALUE){
+                    return fail(ErrorType.TIMESTAMP);
+                }
+                position += timestampWidth;
+            } else if(kind == LITERAL){
+                byte[] literal = literals[step];
+                if(!matches(buffer, position, end, literal)){
+                    // As in LogLineParser, a name that stops before the text after it has a character that is not allowed in it
+                    boolean afterUsername = step > 0 && kinds[step - 1] == USERNAME;
+                    return fail(afterUsername && (end - position < literal.length || !matches(buffer.get(position), literal[0]))
+                            ? ErrorType.USERNAME : ErrorType.SEPARATOR);
+                }
+                position += literal.length;
+            } else if(kind == USERNAME){
+                usernameStart = position;
+                while(position < end && isWordCharacter(buffer.get(position))){
+                    position++;
+                }
+                usernameEnd = position;
+                if(usernameEnd == usernameStart){
+                    return fail(ErrorType.USERNAME);
+                }
+            } else if(kind == FIELD){
+                int fieldStart = position;
+                if(step + 1 < kinds.length){
+                    byte delimiter = literals[step + 1][0];
+                    while(position < end && !matches(buffer.get(position), delimiter)){
+                        position++;
+                    }
+                } else {
+                    position = end;
+                }
+                if(position == fieldStart){
+                    return fail(ErrorType.FIELD);
+                }
+                fields[fieldIndexes[step] * 2] = fieldStart;
+                fields[fieldIndexes[step] * 2 + 1] = position;
+            } else {
+                messageStart = position;
+                position = end;
+            }
+        }
+        if(position != end){
+            return fail(ErrorType.SEPARATOR);
+        }
+        entry.set(buffer, epochSecond, usernameStart, usernameEnd, messageStart, end);
+        entry.setFields(fields, groupField);
+        return true;
+    }
+
+    private long readTimestamp(ByteBuffer buffer, int start){
+        for(int i = 0; i < separators.length; i++){
+            if(!matches(buffer.get(start + separatorOffsets[i]), separators[i])){
+                return Long.MIN_VALUE;
+            }
+        }
+        if(fraction >= 0 && digits(buffer, start + fraction, fractionDigits) < 0){
+            return Long.MIN_VALUE;
+        }
+        return epochSecond(digits(buffer, start + year, 4),
+                month < 0 ? 1 : digits(buffer, start + month, 2),
+                day < 0 ? 1 : digits(buffer, start + day, 2),
+                hour < 0 ? 0 : digits(buffer, start + hour, 2),
+                minute < 0 ? 0 : digits(buffer, start + minute, 2),
+                second < 0 ? 0 : digits(buffer, start + second, 2));
+    }
+
+    private static boolean matches(ByteBuffer buffer, int position, int end, byte[] literal){
+        if(end - position < literal.length){
+            return false;
+        }
+        for(int i = 0; i < literal.length; i++){
+            if(!matches(buffer.get(position + i), literal[i])){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A space of the format matches any whitespace, as \s did in the original pattern
+    private static boolean matches(byte b, byte expected){
+        return expected == ' ' ? isSpace(b) : b == expected;
+    }
+}
@@ -0,0 +1,45 @@
+package com;
+
+// Distinct count estimate in 2 KB: about 2.3% standard error however many values are added
+public class HyperLogLog {
+
+    private static final int PRECISION = 11;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    // The hash should be well mixed: the top bits pick the register, the rest give the rank
+    public void add(long hash){
+        int register = (int)(hash >>> (64 - PRECISION));
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if(rank > registers[register]){
+            registers[register] = (byte)rank;
+        }
+    }
+
+    public void merge(HyperLogLog other){
+        for(int i = 0; i < REGISTERS; i++){
+            if(other.registers[i] > registers[i]){
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate(){
+        double sum = 0;
+        int zeros = 0;
+        for(byte register: registers){
+            sum += 1.0 / (1L << register);
+            if(register == 0){
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Small cardinalities are counted more precisely from the number of empty registers
+        if(estimate <= 2.5 * REGISTERS && zeros > 0){
+            estimate = REGISTERS * Math.log((double)REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
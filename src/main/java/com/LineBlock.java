@@ -0,0 +1,45 @@
+package com;
+
+// Whole lines of a chunk copied into a reusable buffer, with where they came from
+public class LineBlock {
+
+    private byte[] bytes;
+    private int length;
+    private FileChunk chunk;
+    private long position;
+    private long firstLineNumber;
+
+    public LineBlock(int capacity){
+        this.bytes = new byte[capacity];
+    }
+
+    void set(FileChunk chunk, byte[] bytes, int length, long position, long firstLineNumber){
+        this.chunk = chunk;
+        this.bytes = bytes;
+        this.length = length;
+        this.position = position;
+        this.firstLineNumber = firstLineNumber;
+    }
+
+    public byte[] getBytes(){
+        return this.bytes;
+    }
+
+    public int getLength(){
+        return this.length;
+    }
+
+    public FileChunk getChunk(){
+        return this.chunk;
+    }
+
+    // Offset of the first byte in the file, or in the inflated data of a compressed file
+    public long getPosition(){
+        return this.position;
+    }
+
+    // Line numbers count from the start of the chunk
+    public long getFirstLineNumber(){
+        return this.firstLineNumber;
+    }
+}
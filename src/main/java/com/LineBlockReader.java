@@ -0,0 +1,115 @@
+package com;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+// Cuts a chunk into blocks of whole lines; the rest of the last line is carried over to the next block.
+// A compressed file is inflated on the way and read from its start, past the lines the chunk skips
+public class LineBlockReader implements Closeable {
+
+    private final FileChunk chunk;
+    private final InputStream input;
+    private long remaining;
+    private long position;
+    private long lineNumber = 1;
+    private byte[] carry = new byte[0];
+    private int carryLength;
+    private boolean finished;
+
+    public LineBlockReader(FileChunk chunk) throws IOException {
+        this.chunk = chunk;
+        if(CompressedLogReader.isCompressed(chunk)){
+            this.input = new GZIPInputStream(Files.newInputStream(chunk.getFile()), 64 * 1024);
+            this.remaining = Long.MAX_VALUE;
+            this.position = 0;
+            skip(chunk.getSkipped());
+        } else {
+            FileChannel channel = FileChannel.open(chunk.getFile(), StandardOpenOption.READ);
+            channel.position(chunk.getStart());
+            this.input = Channels.newInputStream(channel);
+            this.remaining = chunk.length();
+            this.position = chunk.getStart();
+        }
+    }
+
+    // Fills the block, growing its buffer when a single line does not fit; returns false at the end of the chunk
+    public boolean read(LineBlock block) throws IOException {
+        if(finished && carryLength == 0){
+            return false;
+        }
+        byte[] bytes = block.getBytes();
+        if(bytes.length <= carryLength){
+            bytes = new byte[carryLength * 2];
+        }
+        System.arraycopy(carry, 0, bytes, 0, carryLength);
+        int length = carryLength;
+        carryLength = 0;
+        while(!finished){
+            if(length == bytes.length){
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            int read = remaining == 0 ? -1 : input.read(bytes, length, (int)Math.min(bytes.length - length, remaining));
+            if(read < 0){
+                finished = true;
+                break;
+            }
+            length += read;
+            remaining -= read;
+            if(length < bytes.length){
+                continue;
+            }
+            int lastLineEnd = length;
+            while(lastLineEnd > 0 && bytes[lastLineEnd - 1] != '\n'){
+                lastLineEnd--;
+            }
+            if(lastLineEnd == 0){
+                continue;
+            }
+            carryLength = length - lastLineEnd;
+            if(carry.length < carryLength){
+                carry = new byte[Math.max(carryLength, carry.length * 2)];
+            }
+            System.arraycopy(bytes, lastLineEnd, carry, 0, carryLength);
+            length = lastLineEnd;
+            break;
+        }
+        block.set(chunk, bytes, length, position, lineNumber);
+        position += length;
+        for(int i = 0; i < length; i++){
+            if(bytes[i] == '\n'){
+                lineNumber++;
+            }
+        }
+        return length > 0;
+    }
+
+    // Reads past the skipped lines, counting them so that line numbers stay those of the whole file
+    private void skip(long count) throws IOException {
+        byte[] bytes = new byte[64 * 1024];
+        while(position < count){
+            int read = input.read(bytes, 0, (int)Math.min(bytes.length, count - position));
+            if(read < 0){
+                finished = true;
+                return;
+            }
+            for(int i = 0; i < read; i++){
+                if(bytes[i] == '\n'){
+                    lineNumber++;
+                }
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
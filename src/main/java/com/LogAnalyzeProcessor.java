@@ -4,13 +4,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 public class LogAnalyzeProcessor {
@@ -19,6 +21,9 @@ public class LogAnalyzeProcessor {
     private static final DateTimeFormatter dayFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("yyyy-MM");
 
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
     private final String inputDirectory;
     private final Map<String, Optional<?>> arguments;
 
@@ -28,85 +33,248 @@ public class LogAnalyzeProcessor {
     }
 
     public void analyze() throws IOException, InterruptedException {
-        List<Path> allFilesList = Files.list(Paths.get(inputDirectory)).collect(Collectors.toList());
+        List<Path> allFilesList = listInputFiles();
         int threadsCount = (Integer)arguments.get("threads").get();
-        List<Path>[] filesPerThread = split(allFilesList, threadsCount);
-        Queue<String> normalized = null;
-        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
-
-        Map container = null;
-        EnumSet<GroupingOptions> groupingOptions = null;
-        if(arguments.get("Gusername").isPresent() && arguments.get("Gtime").isPresent()){
-            groupingOptions = GroupingOptions.ALL;
-            container = new HashMap<String, HashMap<LocalDateTime, Long>>();
-        } else if(arguments.get("Gusername").isPresent()){
-            groupingOptions = EnumSet.of(GroupingOptions.USERNAME);
-            container = new HashMap<String, Long>();
-        } else if(arguments.get("Gtime").isPresent()){
-            groupingOptions = EnumSet.of(GroupingOptions.TIMEUNIT);
-            container = new HashMap<LocalDateTime, Long>();
+        Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+        for (Path file: allFilesList) {
+            attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
         }
-        container = Collections.synchronizedMap(container);
-        for (List<Path> files: filesPerThread) {
-            executor.execute(new Thread(new LogAnalyzer<>(files, arguments, container, groupingOptions)));
+        EnumSet<GroupingOptions> groupingOptions = groupingOptions();
+        Path checkpointPath = Paths.get(inputDirectory, Checkpoint.FILE_NAME);
+        Checkpoint checkpoint = null;
+        Map<Path, FileChunk> ranges = null;
+        if(arguments.get("incremental").isPresent()){
+            checkpoint = Checkpoint.load(checkpointPath, Checkpoint.argumentsKey(arguments), groupingOptions);
+            ranges = new HashMap<>();
+            for (Map.Entry<Path, BasicFileAttributes> file: attributes.entrySet()) {
+                long size = file.getValue().size();
+                long start = checkpoint == null ? 0 : checkpoint.resumeOffset(file.getKey(), file.getValue().fileKey(), size);
+                if(isCompressed(file.getKey())){
+                    // Compressed files cannot be resumed; they are either unchanged since the last run or read again,
+                    // past the lines they had when they were still uncompressed logs
+                    ranges.put(file.getKey(), start == size ? new FileChunk(file.getKey(), size, size)
+                            : new FileChunk(file.getKey(), 0, size, checkpoint == null ? 0 : checkpoint.countedPrefix(file.getKey())));
+                } else {
+                    ranges.put(file.getKey(), new FileChunk(file.getKey(), start, FileChunk.lastLineEnd(file.getKey(), start, size)));
+                }
+            }
         }
-        executor.shutdown();
-        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        normalized = normalizeOutputGroupedByUsernameAndTimePeriod(container, (ChronoUnit)arguments.get("Gtime").get());
+        Map<Path, List<LogIndex.Block>> indexBlocks = arguments.get("index").isPresent() ? new ConcurrentHashMap<>() : null;
+        boolean staged = arguments.get("ioThreads").isPresent() || arguments.get("parseThreads").isPresent();
+        int ioThreads = arguments.get("ioThreads").map(value -> (Integer)value).orElse(1);
+        int parseThreads = arguments.get("parseThreads").map(value -> (Integer)value).orElse(threadsCount);
+        boolean perFile = arguments.get("threadPerFile").isPresent();
+        int openFiles = (Integer)arguments.get("openFiles").get();
+        List<FileChunk> chunks = arguments.get("cache").isPresent() ? null
+                : split(attributes, staged ? ioThreads : perFile ? openFiles : threadsCount, indexBlocks, ranges);
 
-        if(arguments.get("output").isPresent()){
-            Files.write(Paths.get((String) arguments.get("output").get()), normalized);
+        ActivitySketches sketches = ActivitySketches.create(arguments);
+        Map container;
+        if(arguments.get("cache").isPresent()){
+            container = analyzeCached(attributes, groupingOptions, threadsCount, indexBlocks);
+        } else if(perFile){
+            container = new PerFileRunner(arguments, groupingOptions, indexBlocks, openFiles, sketches).run(chunks);
+        } else if(staged){
+            // The pipeline only uses existing indexes, it does not build them
+            container = new LogPipeline(chunks, arguments, groupingOptions, ioThreads, parseThreads, sketches).run();
+            indexBlocks = null;
         } else {
-            Files.write(Paths.get("output.txt"), normalized);
-        }
-    }
-
-    private static Queue<String> normalizeOutputGroupedByUsernameAndTimePeriod(Map<String, HashMap<LocalDateTime, Long>> container, ChronoUnit chronoUnit){
-        Queue<String> normalized = new LinkedList<>();
-        container.forEach((user, periodRecordsCount) -> {
-            normalized.add(user);
-            switch(chronoUnit){
-                case HOURS: {
-                    normalized.add("Hour                Count of records");
-                    periodRecordsCount.entrySet().stream()
-                            .sorted(Map.Entry.comparingByKey())
-                            .forEachOrdered(localDateTimeLongEntry -> {
-                                normalized.add(localDateTimeLongEntry.getKey().format(hourFormatter) + "    " + localDateTimeLongEntry.getValue());
-                            });
-                } ; break;
-                case DAYS: {
-                    normalized.add("Day                 Count of records");
-                    periodRecordsCount.entrySet().stream()
-                            .sorted(Map.Entry.comparingByKey())
-                            .forEachOrdered(localDateTimeLongEntry -> {
-                                normalized.add(localDateTimeLongEntry.getKey().format(dayFormatter) + "          " + localDateTimeLongEntry.getValue());
-                            });
-                } ; break;
-                case MONTHS: {
-                    normalized.add("Month               Count of records");
-                    periodRecordsCount.entrySet().stream()
-                            .sorted(Map.Entry.comparingByKey())
-                            .forEachOrdered(localDateTimeLongEntry -> {
-                                normalized.add(localDateTimeLongEntry.getKey().format(monthFormatter) + "             " + localDateTimeLongEntry.getValue());
-                            });
-                } ; break;
+            ForkJoinPool pool = new ForkJoinPool(threadsCount);
+            try {
+                container = pool.invoke(new LogAnalyzeTask(chunks, arguments, groupingOptions, indexBlocks, sketches));
+            } finally {
+                pool.shutdown();
             }
-        });
-        return normalized;
+        }
+        if(indexBlocks != null){
+            writeIndexes(indexBlocks, attributes);
+        }
+        if(ranges != null){
+            if(checkpoint != null){
+                mergeContainers(container, checkpoint.getContainer(), groupingOptions);
+            }
+            Map<String, Checkpoint.FileState> files = new HashMap<>();
+            for (Map.Entry<Path, FileChunk> range: ranges.entrySet()) {
+                BasicFileAttributes fileAttributes = attributes.get(range.getKey());
+                files.put(Checkpoint.stateKey(range.getKey(), fileAttributes.fileKey()),
+                        Checkpoint.stateOf(range.getKey(), range.getValue().getEnd(), fileAttributes.size()));
+            }
+            new Checkpoint(Checkpoint.argumentsKey(arguments), files, container).write(checkpointPath, groupingOptions);
+        }
+        if(arguments.get("partial").isPresent()){
+            new PartialAggregate(arguments, groupingOptions, container).write(Paths.get(arguments.get("partial").get().toString()));
+        } else {
+            writeReport(container, groupingOptions, sketches);
+        }
     }
 
-    private static Queue<String> normalizeOutputGroupedByUsername(Map<String, Long> container){
-        Queue<String> normalized = new LinkedList<>();
-        normalized.add("Username            Count of records");
-        container.forEach((user, recordsCount) -> normalized.add(String.format("%-20s", user) + recordsCount));
-        return normalized;
+    // Takes the counts of unchanged files from the -cache and reads only the new and changed ones
+    private Map analyzeCached(Map<Path, BasicFileAttributes> attributes, EnumSet<GroupingOptions> groupingOptions, int threadsCount,
+                              Map<Path, List<LogIndex.Block>> indexBlocks) throws IOException {
+        AnalysisStats stats = AnalysisStats.current();
+        long start = stats == null ? 0 : System.nanoTime();
+        ResultCache cache = new ResultCache(Paths.get(arguments.get("cache").get().toString()), (Long)arguments.get("cacheSize").get());
+        String key = Checkpoint.argumentsKey(arguments) + "\ninput=" + Paths.get(inputDirectory).toAbsolutePath().normalize()
+                + "\nfiles=" + arguments.get("files").orElse(null) + "\nshard=" + arguments.get("shardIndex").orElse(null) + "/" + arguments.get("shardCount").orElse(null);
+        Map<String, ResultCache.FileResult> cached = cache.load(key, groupingOptions);
+        Map<String, ResultCache.FileResult> results = new HashMap<>();
+        Map<Path, BasicFileAttributes> changed = new LinkedHashMap<>();
+        for (Map.Entry<Path, BasicFileAttributes> file: attributes.entrySet()) {
+            ResultCache.FileResult result = cached.get(file.getKey().toString());
+            if(result != null && result.matches(file.getValue())){
+                results.put(file.getKey().toString(), result);
+            } else {
+                changed.put(file.getKey(), file.getValue());
+            }
+        }
+        if(stats != null){
+            stats.addStageTime("cache", System.nanoTime() - start);
+        }
+        if(!changed.isEmpty()){
+            List<FileChunk> chunks = split(changed, threadsCount, indexBlocks, null);
+            Map<Path, Map> containers;
+            ForkJoinPool pool = new ForkJoinPool(threadsCount);
+            try {
+                containers = pool.invoke(new LogAnalyzeTask(chunks, arguments, groupingOptions, indexBlocks, null, true));
+            } finally {
+                pool.shutdown();
+            }
+            for (Map.Entry<Path, BasicFileAttributes> file: changed.entrySet()) {
+                Map fileContainer = containers.getOrDefault(file.getKey(), newContainer(groupingOptions));
+                results.put(file.getKey().toString(), new ResultCache.FileResult(file.getValue(), fileContainer));
+            }
+            start = stats == null ? 0 : System.nanoTime();
+            cache.store(key, results, groupingOptions);
+            if(stats != null){
+                stats.addStageTime("cache", System.nanoTime() - start);
+            }
+        }
+        Map container = newContainer(groupingOptions);
+        for (ResultCache.FileResult result: results.values()) {
+            mergeContainers(container, result.getContainer(), groupingOptions);
+        }
+        return container;
     }
 
-    private static Queue<String> normalizeOutputGroupedByTimePeriod(Map<LocalDateTime, Long> container, ChronoUnit chronoUnit){
-        Queue<String> normalized = new LinkedList<>();
+    // The .log and .log.gz files of the directory, or the files named in the -files list, narrowed down to the -shard.
+    // Shards take every count-th file by name, so all shards agree on the split as long as they see the same files.
+    // With -prune or -prunePattern the files that are outside -since and -until are left out
+    List<Path> listInputFiles() throws IOException {
+        List<Path> files;
+        if(arguments.get("files").isPresent()){
+            files = Files.readAllLines(Paths.get(arguments.get("files").get().toString())).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .map(line -> Paths.get(inputDirectory).resolve(line))
+                    .collect(Collectors.toList());
+        } else {
+            files = Files.list(Paths.get(inputDirectory))
+                    .filter(p -> p.toString().endsWith(".log") || p.toString().endsWith(".log" + CompressedLogReader.SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        if(arguments.get("shardCount").isPresent()){
+            int shardIndex = (Integer)arguments.get("shardIndex").get();
+            int shardCount = (Integer)arguments.get("shardCount").get();
+            List<Path> sorted = files.stream().sorted().collect(Collectors.toList());
+            files = new ArrayList<>();
+            for(int i = shardIndex; i < sorted.size(); i += shardCount){
+                files.add(sorted.get(i));
+            }
+        }
+        // After sharding, so shards still split the same files
+        if(PartitionPruner.isEnabled(arguments)){
+            files = new PartitionPruner(arguments).select(files);
+        }
+        return files;
+    }
+
+    public void follow() throws IOException, InterruptedException {
+        new LogFollower(Paths.get(inputDirectory), arguments, groupingOptions(), this).follow();
+    }
+
+    EnumSet<GroupingOptions> groupingOptions(){
+        // -Gfield values take the place of the usernames
+        boolean byKey = arguments.get("Gusername").isPresent() || arguments.getOrDefault("Gfield", Optional.empty()).isPresent();
+        if(byKey && arguments.get("Gtime").isPresent()){
+            return GroupingOptions.ALL;
+        } else if(byKey){
+            return EnumSet.of(GroupingOptions.USERNAME);
+        } else if(arguments.get("Gtime").isPresent()){
+            return EnumSet.of(GroupingOptions.TIMEUNIT);
+        }
+        // Only approximate aggregations were asked for
+        return EnumSet.noneOf(GroupingOptions.class);
+    }
+
+    // The report is written next to its final location and moved over it, so readers never see a partial file
+    void writeReport(Map container, EnumSet<GroupingOptions> groupingOptions) throws IOException {
+        writeReport(container, groupingOptions, null);
+    }
+
+    // The sketches, when there are any, are reported after the exact counts
+    void writeReport(Map container, EnumSet<GroupingOptions> groupingOptions, ActivitySketches sketches) throws IOException {
+        AnalysisStats stats = AnalysisStats.current();
+        long start = stats == null ? 0 : System.nanoTime();
+        ChronoUnit chronoUnit = (ChronoUnit)arguments.get("Gtime").orElse(null);
+
+        Path output = Paths.get(arguments.get("output").map(Object::toString).orElse("output.txt")).toAbsolutePath();
+        Path temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        ReportWriter.Format format = arguments.get("outputFormat").map(value -> (ReportWriter.Format)value).orElse(ReportWriter.Format.TEXT);
+        try(ReportWriter writer = new ReportWriter(temporary, format, chronoUnit, keyColumn())){
+            writer.writeCounts(container, groupingOptions);
+            if(sketches != null){
+                Queue<String> normalized = new LinkedList<>();
+                normalizeSketches(sketches, normalized, !groupingOptions.isEmpty());
+                for(String line: normalized){
+                    writer.writeLine(line);
+                }
+            }
+        }
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if(stats != null){
+            stats.addStageTime("report", System.nanoTime() - start);
+        }
+    }
+
+    static Map newContainer(EnumSet<GroupingOptions> groupingOptions){
+        if(groupingOptions.contains(GroupingOptions.USERNAME) && groupingOptions.contains(GroupingOptions.TIMEUNIT)){
+            return new HashMap<String, Map<LocalDateTime, Long>>();
+        } else if(groupingOptions.contains(GroupingOptions.USERNAME)){
+            return new HashMap<String, Long>();
+        }
+        return new HashMap<LocalDateTime, Long>();
+    }
+
+    static void mergeContainers(Map target, Map source, EnumSet<GroupingOptions> groupingOptions){
+        AnalysisStats stats = AnalysisStats.current();
+        long start = stats == null ? 0 : System.nanoTime();
+        if(groupingOptions.contains(GroupingOptions.USERNAME) && groupingOptions.contains(GroupingOptions.TIMEUNIT)){
+            Map<String, Map<LocalDateTime, Long>> targetRecordsCount = target;
+            Map<String, Map<LocalDateTime, Long>> sourceRecordsCount = source;
+            sourceRecordsCount.forEach((user, periodRecordsCount) -> {
+                Map<LocalDateTime, Long> targetPeriodRecordsCount = targetRecordsCount.computeIfAbsent(user, key -> new HashMap<>());
+                periodRecordsCount.forEach((period, count) -> targetPeriodRecordsCount.merge(period, count, Long::sum));
+            });
+        } else {
+            Map<Object, Long> targetRecordsCount = target;
+            Map<Object, Long> sourceRecordsCount = source;
+            sourceRecordsCount.forEach((key, count) -> targetRecordsCount.merge(key, count, Long::sum));
+        }
+        if(stats != null){
+            stats.addStageTime("merge", System.nanoTime() - start);
+        }
+    }
+
+    private String keyColumn(){
+        return arguments.getOrDefault("Gfield", Optional.empty())
+                .map(field -> String.format("%-20s", Character.toUpperCase(((String)field).charAt(0)) + ((String)field).substring(1)))
+                .orElse("Username            ");
+    }
+
+    private static void normalizeTimePeriods(Map<LocalDateTime, Long> container, ChronoUnit chronoUnit, String column, Queue<String> normalized){
         switch(chronoUnit){
             case HOURS: {
-                normalized.add("Hour                Count of records");
+                normalized.add("Hour                " + column);
                 container.entrySet().stream()
                         .sorted(Map.Entry.comparingByKey())
                         .forEachOrdered(localDateTimeLongEntry -> {
@@ -114,7 +282,7 @@ public class LogAnalyzeProcessor {
                         });
             }; break;
             case DAYS: {
-                normalized.add("Day                 Count of records");
+                normalized.add("Day                 " + column);
                 container.entrySet().stream()
                         .sorted(Map.Entry.comparingByKey())
                         .forEachOrdered(localDateTimeLongEntry -> {
@@ -122,7 +290,7 @@ public class LogAnalyzeProcessor {
                         });
             } ; break;
             case MONTHS: {
-                normalized.add("Month               Count of records");
+                normalized.add("Month               " + column);
                 container.entrySet().stream()
                         .sorted(Map.Entry.comparingByKey())
                         .forEachOrdered(localDateTimeLongEntry -> {
@@ -130,17 +298,94 @@ public class LogAnalyzeProcessor {
                         });
             } ; break;
         }
-        return normalized;
     }
 
-    private static List[] split(List<Path> list, int numberOfParts){
-        List[] parts = new List[numberOfParts];
-        int partSize = list.size() / numberOfParts;
-        int i = 0;
-        for( ; i < numberOfParts - 1 ; i++){
-            parts[i] = list.subList(i * partSize, i * partSize + partSize);
+    // afterCounts: the exact counts were written before, so the first section is separated from them too
+    private static void normalizeSketches(ActivitySketches sketches, Queue<String> normalized, boolean afterCounts){
+        if(sketches.getTopUsers() != null){
+            if(afterCounts || !normalized.isEmpty()){
+                normalized.add("");
+            }
+            normalized.add("Top users           Count of records    Maximum overcount");
+            sketches.getTopUsers().top(sketches.getTop()).forEach(counter ->
+                    normalized.add(String.format("%-20s%-20d", counter.getName(), counter.getCount()) + counter.getError()));
+        }
+        if(sketches.getDistinctUsers() != null){
+            if(afterCounts || !normalized.isEmpty()){
+                normalized.add("");
+            }
+            Map<LocalDateTime, Long> distinctUsers = new HashMap<>();
+            sketches.getDistinctUsers().forEach((bucket, users) -> distinctUsers.put(bucket, users.estimate()));
+            if(!distinctUsers.isEmpty()){
+                TimeBucketer.fillEmptyPeriods(distinctUsers, Collections.min(distinctUsers.keySet()), Collections.max(distinctUsers.keySet()), sketches.getDistinctUnit());
+            }
+            normalizeTimePeriods(distinctUsers, sketches.getDistinctUnit(), "Distinct users", normalized);
+        }
+        if(sketches.getUserSample() != null){
+            if(afterCounts || !normalized.isEmpty()){
+                normalized.add("");
+            }
+            long[] counts = sketches.getUserSample().sortedCounts();
+            normalized.add("Users (estimated)   " + sketches.getUserSample().estimatedUsers());
+            normalized.add("Quantile            Records per user");
+            if(counts.length > 0){
+                for(double quantile: new double[]{0.5, 0.9, 0.99}){
+                    long count = counts[Math.max(0, (int)Math.ceil(quantile * counts.length) - 1)];
+                    normalized.add(String.format("%-20s", "p" + Math.round(quantile * 100)) + count);
+                }
+                normalized.add(String.format("%-20s", "max (sampled)") + counts[counts.length - 1]);
+            }
+        }
+    }
+
+    private List<FileChunk> split(Map<Path, BasicFileAttributes> attributes, int threadsCount, Map<Path, List<LogIndex.Block>> indexBlocks,
+                                  Map<Path, FileChunk> ranges) throws IOException {
+        long totalSize = attributes.values().stream().mapToLong(BasicFileAttributes::size).sum();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, totalSize / ((long) threadsCount * CHUNKS_PER_THREAD));
+        Long since = arguments.get("since").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(null);
+        Long until = arguments.get("until").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(null);
+        String username = (String)arguments.get("username").orElse(null);
+        long formatHash = LogFormat.of(arguments).getDefinitionHash();
+        List<FileChunk> chunks = new ArrayList<>();
+        for (Map.Entry<Path, BasicFileAttributes> file: attributes.entrySet()) {
+            long size = file.getValue().size();
+            FileChunk range = ranges == null ? new FileChunk(file.getKey(), 0, size) : ranges.get(file.getKey());
+            if(isCompressed(file.getKey())){
+                if(range.length() > 0){
+                    chunks.add(range);
+                }
+                continue;
+            }
+            if(indexBlocks != null && range.getStart() == 0 && range.getEnd() == size){
+                LogIndex index = LogIndex.load(file.getKey(), size, file.getValue().lastModifiedTime().toMillis(), formatHash);
+                if(index != null){
+                    chunks.addAll(index.select(file.getKey(), since, until, username, chunkSize));
+                    continue;
+                }
+                indexBlocks.put(file.getKey(), Collections.synchronizedList(new ArrayList<>()));
+            }
+            chunks.addAll(FileChunk.split(file.getKey(), range.getStart(), range.getEnd(), chunkSize));
         }
-        parts[i] = list.subList(i * numberOfParts, list.size());
-        return parts;
+        return chunks;
+    }
+
+    private static boolean isCompressed(Path file){
+        return file.toString().endsWith(CompressedLogReader.SUFFIX);
+    }
+
+    private void writeIndexes(Map<Path, List<LogIndex.Block>> indexBlocks, Map<Path, BasicFileAttributes> attributes){
+        long formatHash = LogFormat.of(arguments).getDefinitionHash();
+        indexBlocks.forEach((file, blocks) -> {
+            BasicFileAttributes fileAttributes = attributes.get(file);
+            LogIndex index = LogIndex.fromBlocks(blocks, fileAttributes.size(), fileAttributes.lastModifiedTime().toMillis(), formatHash);
+            if(index == null){
+                return;
+            }
+            try {
+                index.write(file);
+            } catch (IOException e) {
+                System.err.println("Cannot write index for file " + file);
+            }
+        });
     }
 }
@@ -0,0 +1,84 @@
+package com;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+public class LogAnalyzeTask extends RecursiveTask<Map> {
+
+    private final List<FileChunk> chunks;
+    private final Map<String, Optional<?>> arguments;
+    private final EnumSet<GroupingOptions> groupingOptions;
+    private final Map<Path, List<LogIndex.Block>> indexBlocks;
+    private final ActivitySketches sketches;
+    // Returns a container per file, keyed by path, instead of one for all chunks
+    private final boolean byFile;
+
+    LogAnalyzeTask(List<FileChunk> chunks, Map<String, Optional<?>> arguments, EnumSet<GroupingOptions> groupingOptions,
+                   Map<Path, List<LogIndex.Block>> indexBlocks, ActivitySketches sketches){
+        this(chunks, arguments, groupingOptions, indexBlocks, sketches, false);
+    }
+
+    LogAnalyzeTask(List<FileChunk> chunks, Map<String, Optional<?>> arguments, EnumSet<GroupingOptions> groupingOptions,
+                   Map<Path, List<LogIndex.Block>> indexBlocks, ActivitySketches sketches, boolean byFile){
+        this.chunks = chunks;
+        this.arguments = arguments;
+        this.groupingOptions = groupingOptions;
+        this.indexBlocks = indexBlocks;
+        this.sketches = sketches;
+        this.byFile = byFile;
+    }
+
+    @Override
+    protected Map compute() {
+        if(chunks.size() <= 1){
+            Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+            ActivitySketches chunkSketches = sketches == null ? null : sketches.emptyCopy();
+            new LogAnalyzer<>(chunks, arguments, container, groupingOptions, indexBlocks, chunkSketches).run();
+            if(sketches != null){
+                sketches.merge(chunkSketches);
+            }
+            if(byFile){
+                Map<Path, Map> containers = new HashMap<>();
+                if(!chunks.isEmpty()){
+                    containers.put(chunks.get(0).getFile(), container);
+                }
+                return containers;
+            }
+            return container;
+        }
+        int middle = splitIndex();
+        LogAnalyzeTask left = new LogAnalyzeTask(chunks.subList(0, middle), arguments, groupingOptions, indexBlocks, sketches, byFile);
+        LogAnalyzeTask right = new LogAnalyzeTask(chunks.subList(middle, chunks.size()), arguments, groupingOptions, indexBlocks, sketches, byFile);
+        right.fork();
+        Map container = left.compute();
+        if(byFile){
+            Map<Path, Map> containers = container;
+            Map<Path, Map> rightContainers = right.join();
+            rightContainers.forEach((file, fileContainer) -> {
+                Map existing = containers.putIfAbsent(file, fileContainer);
+                if(existing != null){
+                    LogAnalyzeProcessor.mergeContainers(existing, fileContainer, groupingOptions);
+                }
+            });
+            return containers;
+        }
+        LogAnalyzeProcessor.mergeContainers(container, right.join(), groupingOptions);
+        return container;
+    }
+
+    // Splits by bytes rather than by number of chunks, so one big file does not end up next to many small ones
+    private int splitIndex(){
+        long total = 0;
+        for(FileChunk chunk: chunks){
+            total += chunk.length();
+        }
+        long half = 0;
+        int index = 0;
+        while(index < chunks.size() - 1 && half + chunks.get(index).length() <= total / 2){
+            half += chunks.get(index).length();
+            index++;
+        }
+        return Math.max(index, 1);
+    }
+}
@@ -1,6 +1,7 @@
 package com;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 public class LogEntry {
@@ -18,6 +19,10 @@ public class LogEntry {
         return this.dateTime;
     }
 
+    public long getEpochSecond(){
+        return getDateTime().toEpochSecond(ZoneOffset.UTC);
+    }
+
     public String getUsername(){
         return this.username;
     }
@@ -39,11 +44,11 @@ public class LogEntry {
     }
 
     public String format(DateTimeFormatter formatter){
-        return dateTime.format(formatter) + " [" + username + "] : " + message;
+        return getDateTime().format(formatter) + " [" + getUsername() + "] : " + getMessage();
     }
 
     @Override
     public String toString() {
-        return dateTime.toString() + " [" + username + "] : " + message;
+        return getDateTime().toString() + " [" + getUsername() + "] : " + getMessage();
     }
 }
@@ -0,0 +1,54 @@
+package com;
+
+// Column store for records: 12 bytes per record, the timestamp and username id that BatchAggregator counts, instead
+// of three objects per LogEntry
+public class LogEntryBatch {
+
+    private final UsernameDictionary usernames;
+    private final long[] epochSeconds;
+    private final int[] usernameIds;
+    private int size;
+
+    public LogEntryBatch(UsernameDictionary usernames, int capacity){
+        this.usernames = usernames;
+        this.epochSeconds = new long[capacity];
+        this.usernameIds = new int[capacity];
+    }
+
+    public boolean isFull(){
+        return size == epochSeconds.length;
+    }
+
+    public void add(RawLogEntry entry){
+        if(isFull()){
+            throw new IllegalStateException("Batch is full");
+        }
+        epochSeconds[size] = entry.getEpochSecond();
+        usernameIds[size] = entry.getGroupId();
+        size++;
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    public UsernameDictionary getUsernames(){
+        return this.usernames;
+    }
+
+    public long getEpochSecond(int index){
+        return epochSeconds[index];
+    }
+
+    public int getUsernameId(int index){
+        return usernameIds[index];
+    }
+
+    public String getUsername(int index){
+        return usernames.get(usernameIds[index]);
+    }
+
+    public void clear(){
+        size = 0;
+    }
+}
@@ -0,0 +1,138 @@
+package com;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Keeps the counts of a directory up to date: new and growing .log files are tailed and the report is rewritten periodically.
+// Compressed files are rotated copies of tailed files, so only the ones there at the start are read, like in a batch run
+public class LogFollower {
+
+    private static final long TAIL_CHUNK_SIZE = 1024 * 1024;
+
+    private final Path directory;
+    private final EnumSet<GroupingOptions> groupingOptions;
+    private final LogAnalyzeProcessor processor;
+    private final long intervalMillis;
+    // Read offsets by file key, so that a file renamed by rotation is not read again from the start under its new name
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Map container;
+    private final List<FileChunk> pending = new ArrayList<>();
+    private final LogAnalyzer<Map> analyzer;
+    private final ErrorCollector errors = new ErrorCollector();
+    private final ErrorReport errorReport = ErrorReport.current();
+
+    LogFollower(Path directory, Map<String, Optional<?>> arguments, EnumSet<GroupingOptions> groupingOptions, LogAnalyzeProcessor processor){
+        this.directory = directory;
+        this.groupingOptions = groupingOptions;
+        this.processor = processor;
+        this.intervalMillis = TimeUnit.SECONDS.toMillis((Integer)arguments.get("interval").get());
+        this.container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        this.analyzer = new LogAnalyzer<>(pending, arguments, container, groupingOptions, null);
+    }
+
+    public void follow() throws IOException, InterruptedException {
+        try(WatchService watcher = directory.getFileSystem().newWatchService()){
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            Set<Path> changed = new LinkedHashSet<>(processor.listInputFiles());
+            boolean deleted = false;
+            long nextReport = System.currentTimeMillis();
+            while(true){
+                readAppended(changed);
+                changed.clear();
+                if(deleted){
+                    forgetDeleted();
+                    deleted = false;
+                }
+                if(System.currentTimeMillis() >= nextReport){
+                    processor.writeReport(container, groupingOptions);
+                    if(errorReport != null){
+                        errorReport.add(errors);
+                        errorReport.summarize();
+                    }
+                    nextReport = System.currentTimeMillis() + intervalMillis;
+                }
+                WatchKey key = watcher.poll(Math.max(1, nextReport - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if(key == null){
+                    continue;
+                }
+                for(WatchEvent<?> event: key.pollEvents()){
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                        changed.addAll(listLogFiles());
+                        continue;
+                    }
+                    Path file = directory.resolve((Path)event.context());
+                    if(!file.toString().endsWith(".log")){
+                        continue;
+                    }
+                    // A rename is a delete and a create, so the offset is only dropped once no file has its key
+                    if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE){
+                        deleted = true;
+                    } else {
+                        changed.add(file);
+                    }
+                }
+                if(!key.reset()){
+                    throw new IOException("Directory " + directory + " is no longer accessible");
+                }
+            }
+        }
+    }
+
+    private Set<Path> listLogFiles() throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.filter(p -> p.toString().endsWith(".log")).collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+    }
+
+    // Reads whole lines appended since the last call; the chunks are small, so only a bounded part of a file is mapped at once
+    void readAppended(Set<Path> files){
+        pending.clear();
+        for(Path file: files){
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                long size = attributes.size();
+                if(file.toString().endsWith(CompressedLogReader.SUFFIX)){
+                    pending.add(new FileChunk(file, 0, size));
+                    continue;
+                }
+                String key = Checkpoint.stateKey(file, attributes.fileKey());
+                long start = offsets.getOrDefault(key, 0L);
+                if(start > size){
+                    start = 0;
+                }
+                long end = FileChunk.lastLineEnd(file, start, size);
+                pending.addAll(FileChunk.split(file, start, end, TAIL_CHUNK_SIZE));
+                offsets.put(key, end);
+            } catch (NoSuchFileException e) {
+                // Deleted meanwhile, its offset goes with the next forgetDeleted()
+            } catch (IOException e) {
+                errors.addUnreadable(file, e);
+            }
+        }
+        if(!pending.isEmpty()){
+            analyzer.run();
+        }
+    }
+
+    private void forgetDeleted() throws IOException {
+        Set<String> keys = new HashSet<>();
+        for(Path file: listLogFiles()){
+            try {
+                keys.add(Checkpoint.stateKey(file, Files.readAttributes(file, BasicFileAttributes.class).fileKey()));
+            } catch (NoSuchFileException ignored) {
+                // Deleted since the listing
+            }
+        }
+        offsets.keySet().retainAll(keys);
+    }
+
+    Map getContainer(){
+        return this.container;
+    }
+}
@@ -0,0 +1,272 @@
+package com;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// A line layout such as "yyyy-MM-dd HH:mm:ss [username] : message", read from format.txt or -format <file>. The timestamp
+// is written with the letters yyyy MM dd HH mm ss and S (fraction of a second, ignored), username and message name their
+// fields, {name} declares an extra field and everything else is literal text, a space matching any whitespace. A
+// definition is compiled once into the steps of a FormatLineParser; the layout above keeps its hand-written LogLineParser
+public class LogFormat {
+
+    public static final String DEFAULT_DEFINITION = "yyyy-MM-dd HH:mm:ss [username] : message";
+    public static final LogFormat DEFAULT = new LogFormat(DEFAULT_DEFINITION);
+
+    private static final String TIMESTAMP_LETTERS = "yMdHmsS";
+
+    enum StepKind { TIMESTAMP, LITERAL, USERNAME, FIELD, MESSAGE }
+
+    static class Step {
+        final StepKind kind;
+        final byte[] literal;
+        final int field;
+
+        Step(StepKind kind, byte[] literal, int field){
+            this.kind = kind;
+            this.literal = literal;
+            this.field = field;
+        }
+    }
+
+    // Where the parts of a fixed-width timestamp are, -1 for the parts it does not have
+    static class TimestampLayout {
+        int width;
+        int year = -1;
+        int month = -1;
+        int day = -1;
+        int hour = -1;
+        int minute = -1;
+        int second = -1;
+        int fraction = -1;
+        int fractionDigits;
+        final List<Integer> separatorOffsets = new ArrayList<>();
+        final List<Byte> separators = new ArrayList<>();
+    }
+
+    private final String definition;
+    private final List<Step> steps = new ArrayList<>();
+    private final List<String> fieldNames = new ArrayList<>();
+    private TimestampLayout timestamp;
+    private boolean hasUsername;
+    private int minLength;
+
+    private LogFormat(String definition){
+        this.definition = definition;
+        compile();
+    }
+
+    public static LogFormat parse(String definition){
+        return definition.equals(DEFAULT_DEFINITION) ? DEFAULT : new LogFormat(definition);
+    }
+
+    // The first line that is neither blank nor a # comment
+    public static LogFormat load(Path file) throws IOException {
+        return parse(definitionOf(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), file.toString()));
+    }
+
+    // The format.txt bundled with the application
+    public static LogFormat loadDefault() throws IOException {
+        try(InputStream input = LogFormat.class.getResourceAsStream("/format.txt")){
+            if(input == null){
+                return DEFAULT;
+            }
+            return parse(definitionOf(new String(input.readAllBytes(), StandardCharsets.UTF_8), "format.txt"));
+        }
+    }
+
+    public static LogFormat of(Map<String, Optional<?>> arguments){
+        return arguments.get("format").map(value -> (LogFormat)value).orElse(DEFAULT);
+    }
+
+    // A parser for the -format of the arguments that also picks out the -Gfield field, one per reader
+    public static LogLineParser newParser(Map<String, Optional<?>> arguments){
+        LogFormat format = of(arguments);
+        int groupField = arguments.get("Gfield").map(name -> format.fieldIndex((String)name)).orElse(-1);
+        if(format == DEFAULT){
+            return new LogLineParser();
+        }
+        return new FormatLineParser(format, groupField);
+    }
+
+    public String getDefinition(){
+        return this.definition;
+    }
+
+    // Stored in the index files, whose blocks depend on which lines the format accepts
+    public long getDefinitionHash(){
+        byte[] bytes = definition.getBytes(StandardCharsets.UTF_8);
+        return ActivitySketches.hash(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    public List<String> getFieldNames(){
+        return Collections.unmodifiableList(this.fieldNames);
+    }
+
+    public int fieldIndex(String name){
+        return fieldNames.indexOf(name);
+    }
+
+    public boolean hasUsername(){
+        return this.hasUsername;
+    }
+
+    List<Step> getSteps(){
+        return this.steps;
+    }
+
+    TimestampLayout getTimestamp(){
+        return this.timestamp;
+    }
+
+    int getMinLength(){
+        return this.minLength;
+    }
+
+    private static String definitionOf(String text, String source){
+        for(String line: text.split("\r?\n")){
+            if(!line.trim().isEmpty() && !line.startsWith("#")){
+                return line;
+            }
+        }
+        throw new IllegalArgumentException("No format definition in " + source);
+    }
+
+    private void compile(){
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while(i < definition.length()){
+            char c = definition.charAt(i);
+            if(definition.startsWith("username", i)){
+                if(hasUsername){
+                    throw new IllegalArgumentException("Format has more than one username: " + definition);
+                }
+                addLiteral(literal);
+                steps.add(new Step(StepKind.USERNAME, null, -1));
+                hasUsername = true;
+                i += "username".length();
+            } else if(definition.startsWith("message", i)){
+                addLiteral(literal);
+                steps.add(new Step(StepKind.MESSAGE, null, -1));
+                i += "message".length();
+            } else if(c == '{'){
+                int close = definition.indexOf('}', i);
+                if(close < 0){
+                    throw new IllegalArgumentException("Unclosed { in format: " + definition);
+                }
+                String name = definition.substring(i + 1, close).trim();
+                if(name.isEmpty() || fieldNames.contains(name)){
+                    throw new IllegalArgumentException("Field names should be distinct and not empty: " + definition);
+                }
+                addLiteral(literal);
+                steps.add(new Step(StepKind.FIELD, null, fieldNames.size()));
+                fieldNames.add(name);
+                i = close + 1;
+            } else if(timestamp == null && isTimestampStart(i)){
+                addLiteral(literal);
+                i = compileTimestamp(i);
+                steps.add(new Step(StepKind.TIMESTAMP, null, -1));
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        addLiteral(literal);
+        validate();
+    }
+
+    private void addLiteral(StringBuilder literal){
+        if(literal.length() > 0){
+            steps.add(new Step(StepKind.LITERAL, literal.toString().getBytes(StandardCharsets.UTF_8), -1));
+            literal.setLength(0);
+        }
+    }
+
+    // A timestamp starts with a run of at least two of the same pattern letter, so words such as "Started" stay literal
+    private boolean isTimestampStart(int i){
+        char c = definition.charAt(i);
+        return TIMESTAMP_LETTERS.indexOf(c) >= 0 && i + 1 < definition.length() && definition.charAt(i + 1) == c;
+    }
+
+    // Letter runs separated by single characters, e.g. yyyy-MM-dd'T'HH:mm:ss.SSS without the quotes
+    private int compileTimestamp(int start){
+        TimestampLayout layout = new TimestampLayout();
+        int i = start;
+        while(true){
+            char letter = definition.charAt(i);
+            int runEnd = i;
+            while(runEnd < definition.length() && definition.charAt(runEnd) == letter){
+                runEnd++;
+            }
+            setPart(layout, letter, i - start, runEnd - i);
+            i = runEnd;
+            if(i + 1 >= definition.length()){
+                break;
+            }
+            char separator = definition.charAt(i);
+            char next = definition.charAt(i + 1);
+            boolean isSeparator = !Character.isLetterOrDigit(separator) || separator == 'T';
+            boolean nextIsPart = TIMESTAMP_LETTERS.indexOf(next) >= 0 && (next == 'S' || (i + 2 < definition.length() && definition.charAt(i + 2) == next));
+            if(!isSeparator || !nextIsPart){
+                break;
+            }
+            layout.separatorOffsets.add(i - start);
+            layout.separators.add((byte)separator);
+            i++;
+        }
+        if(layout.year < 0){
+            throw new IllegalArgumentException("The timestamp of a format needs a yyyy year: " + definition);
+        }
+        layout.width = i - start;
+        timestamp = layout;
+        return i;
+    }
+
+    private void setPart(TimestampLayout layout, char letter, int offset, int length){
+        int expected = letter == 'y' ? 4 : letter == 'S' ? length : 2;
+        if(length != expected || length > 9){
+            throw new IllegalArgumentException("Unsupported timestamp pattern " + String.valueOf(letter).repeat(length) + " in format: " + definition);
+        }
+        int previous;
+        switch(letter){
+            case 'y': previous = layout.year; layout.year = offset; break;
+            case 'M': previous = layout.month; layout.month = offset; break;
+            case 'd': previous = layout.day; layout.day = offset; break;
+            case 'H': previous = layout.hour; layout.hour = offset; break;
+            case 'm': previous = layout.minute; layout.minute = offset; break;
+            case 's': previous = layout.second; layout.second = offset; break;
+            default: previous = layout.fraction; layout.fraction = offset; layout.fractionDigits = length;
+        }
+        if(previous >= 0){
+            throw new IllegalArgumentException("Timestamp pattern letter " + letter + " is repeated in format: " + definition);
+        }
+    }
+
+    private void validate(){
+        if(timestamp == null){
+            throw new IllegalArgumentException("A format needs a timestamp such as yyyy-MM-dd HH:mm:ss: " + definition);
+        }
+        for(int i = 0; i < steps.size(); i++){
+            Step step = steps.get(i);
+            Step next = i + 1 < steps.size() ? steps.get(i + 1) : null;
+            if(step.kind == StepKind.MESSAGE && next != null){
+                throw new IllegalArgumentException("message should be the last field of a format: " + definition);
+            }
+            // A field ends where the text after it starts, so two fields cannot touch
+            if(step.kind == StepKind.FIELD && next != null && next.kind != StepKind.LITERAL){
+                throw new IllegalArgumentException("Field {" + fieldNames.get(step.field) + "} should be followed by literal text: " + definition);
+            }
+            switch(step.kind){
+                case TIMESTAMP: minLength += timestamp.width; break;
+                case LITERAL: minLength += step.literal.length; break;
+                case USERNAME:
+                case FIELD: minLength++; break;
+                default:
+            }
+        }
+    }
+}
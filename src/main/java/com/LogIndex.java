@@ -0,0 +1,294 @@
+package com;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Sidecar index stored as <file>.idx: time range and username bloom filter for every block of about BLOCK_SIZE bytes.
+// A filter has about BLOOM_BITS_PER_USER bits for every distinct username of its block, for a false positive rate
+// near 1%, and its length in words is stored before it. Blocks only hold the lines the -format accepted, so an index is
+// only used with the format it was built with
+public class LogIndex {
+
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4c494458;
+    private static final int VERSION = 3;
+    private static final long BLOCK_SIZE = 1024 * 1024;
+    private static final int BLOOM_BITS_PER_USER = 10;
+    private static final int BLOOM_HASHES = 7;
+    // A block of BLOCK_SIZE bytes cannot have more distinct usernames than lines
+    private static final int MAX_BLOOM_WORDS = (int)(BLOCK_SIZE * BLOOM_BITS_PER_USER / 64);
+
+    private final long fileSize;
+    private final long lastModified;
+    private final long formatHash;
+    private final List<Block> blocks;
+
+    public LogIndex(long fileSize, long lastModified, long formatHash, List<Block> blocks){
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.formatHash = formatHash;
+        this.blocks = blocks;
+    }
+
+    public List<Block> getBlocks(){
+        return this.blocks;
+    }
+
+    public long getMinEpochSecond(){
+        return blocks.stream().mapToLong(Block::getMinEpochSecond).min().orElse(Long.MAX_VALUE);
+    }
+
+    public long getMaxEpochSecond(){
+        return blocks.stream().mapToLong(Block::getMaxEpochSecond).max().orElse(Long.MIN_VALUE);
+    }
+
+    public List<FileChunk> select(Path file, Long since, Long until, String username, long chunkSize){
+        List<FileChunk> chunks = new ArrayList<>();
+        long start = -1;
+        long end = -1;
+        for(Block block: blocks){
+            if(!block.mightMatch(since, until, username)){
+                continue;
+            }
+            if(start != -1 && end == block.getStart() && block.getEnd() - start <= chunkSize){
+                end = block.getEnd();
+                continue;
+            }
+            if(start != -1){
+                chunks.add(new FileChunk(file, start, end));
+            }
+            start = block.getStart();
+            end = block.getEnd();
+        }
+        if(start != -1){
+            chunks.add(new FileChunk(file, start, end));
+        }
+        return chunks;
+    }
+
+    public static Path indexPath(Path file){
+        return Paths.get(file.toString() + SUFFIX);
+    }
+
+    // Returns null when there is no index or it was built for another size or modification time of the file, or another format
+    public static LogIndex load(Path file, long fileSize, long lastModified, long formatHash){
+        Path indexFile = indexPath(file);
+        if(!Files.isRegularFile(indexFile)){
+            return null;
+        }
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))){
+            if(input.readInt() != MAGIC || input.readInt() != VERSION){
+                return null;
+            }
+            long indexedSize = input.readLong();
+            long indexedLastModified = input.readLong();
+            long indexedFormatHash = input.readLong();
+            if(indexedSize != fileSize || indexedLastModified != lastModified || indexedFormatHash != formatHash){
+                return null;
+            }
+            int blocksCount = input.readInt();
+            List<Block> blocks = new ArrayList<>(blocksCount);
+            for(int i = 0; i < blocksCount; i++){
+                long start = input.readLong();
+                long end = input.readLong();
+                long minEpochSecond = input.readLong();
+                long maxEpochSecond = input.readLong();
+                int bloomWords = input.readInt();
+                if(bloomWords <= 0 || bloomWords > MAX_BLOOM_WORDS){
+                    return null;
+                }
+                long[] bloom = new long[bloomWords];
+                for(int j = 0; j < bloomWords; j++){
+                    bloom[j] = input.readLong();
+                }
+                blocks.add(new Block(start, end, minEpochSecond, maxEpochSecond, bloom));
+            }
+            return new LogIndex(indexedSize, indexedLastModified, indexedFormatHash, blocks);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath(file))))){
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(fileSize);
+            output.writeLong(lastModified);
+            output.writeLong(formatHash);
+            output.writeInt(blocks.size());
+            for(Block block: blocks){
+                output.writeLong(block.start);
+                output.writeLong(block.end);
+                output.writeLong(block.minEpochSecond);
+                output.writeLong(block.maxEpochSecond);
+                output.writeInt(block.bloom.length);
+                for(long word: block.bloom){
+                    output.writeLong(word);
+                }
+            }
+        }
+    }
+
+    // Blocks from the chunks of one file; null unless they cover the whole file
+    public static LogIndex fromBlocks(List<Block> blocks, long fileSize, long lastModified, long formatHash){
+        List<Block> sorted = new ArrayList<>(blocks);
+        sorted.sort((left, right) -> Long.compare(left.start, right.start));
+        long position = 0;
+        for(Block block: sorted){
+            if(block.start != position){
+                return null;
+            }
+            position = block.end;
+        }
+        return position == fileSize ? new LogIndex(fileSize, lastModified, formatHash, sorted) : null;
+    }
+
+    private static long hash(ByteBuffer buffer, int start, int end){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = start; i < end; i++){
+            hash ^= buffer.get(i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int bloomBit(long hash, int i, long[] bloom){
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % (bloom.length * 64);
+    }
+
+    public static class Block {
+        private final long start;
+        private final long end;
+        private final long minEpochSecond;
+        private final long maxEpochSecond;
+        private final long[] bloom;
+
+        Block(long start, long end, long minEpochSecond, long maxEpochSecond, long[] bloom){
+            this.start = start;
+            this.end = end;
+            this.minEpochSecond = minEpochSecond;
+            this.maxEpochSecond = maxEpochSecond;
+            this.bloom = bloom;
+        }
+
+        public long getStart(){
+            return this.start;
+        }
+
+        public long getEnd(){
+            return this.end;
+        }
+
+        public long getMinEpochSecond(){
+            return this.minEpochSecond;
+        }
+
+        public long getMaxEpochSecond(){
+            return this.maxEpochSecond;
+        }
+
+        // since and until are exclusive, like the -since and -until filters
+        public boolean mightMatch(Long since, Long until, String username){
+            if(minEpochSecond > maxEpochSecond){
+                return false;
+            }
+            if(since != null && maxEpochSecond <= since){
+                return false;
+            }
+            if(until != null && minEpochSecond >= until){
+                return false;
+            }
+            return username == null || mightContain(username);
+        }
+
+        private boolean mightContain(String username){
+            byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+            long hash = hash(ByteBuffer.wrap(bytes), 0, bytes.length);
+            for(int i = 0; i < BLOOM_HASHES; i++){
+                int bit = bloomBit(hash, i, bloom);
+                if((bloom[bit >>> 6] & (1L << bit)) == 0){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Collects blocks while a chunk is read; lines are expected in file order
+    public static class BlockBuilder {
+        private final List<Block> blocks = new ArrayList<>();
+        private long blockStart = -1;
+        private long minEpochSecond;
+        private long maxEpochSecond;
+        // Username hashes of the current block, the filter is sized when the block ends
+        private long[] hashes = new long[1024];
+        private int hashesCount;
+
+        public void start(long chunkStart){
+            blockStart = chunkStart;
+            resetBlock();
+        }
+
+        public void add(long lineOffset, long epochSecond, ByteBuffer buffer, int usernameStart, int usernameEnd){
+            if(lineOffset - blockStart >= BLOCK_SIZE){
+                blocks.add(new Block(blockStart, lineOffset, minEpochSecond, maxEpochSecond, bloom()));
+                blockStart = lineOffset;
+                resetBlock();
+            }
+            minEpochSecond = Math.min(minEpochSecond, epochSecond);
+            maxEpochSecond = Math.max(maxEpochSecond, epochSecond);
+            long hash = hash(buffer, usernameStart, usernameEnd);
+            // Runs of lines of one user are common and need the hash only once
+            if(hashesCount > 0 && hashes[hashesCount - 1] == hash){
+                return;
+            }
+            if(hashesCount == hashes.length){
+                hashes = Arrays.copyOf(hashes, hashesCount * 2);
+            }
+            hashes[hashesCount++] = hash;
+        }
+
+        public List<Block> finish(long chunkEnd){
+            blocks.add(new Block(blockStart, chunkEnd, minEpochSecond, maxEpochSecond, bloom()));
+            List<Block> result = Collections.unmodifiableList(new ArrayList<>(blocks));
+            blocks.clear();
+            return result;
+        }
+
+        private void resetBlock(){
+            minEpochSecond = Long.MAX_VALUE;
+            maxEpochSecond = Long.MIN_VALUE;
+            hashesCount = 0;
+        }
+
+        private long[] bloom(){
+            Arrays.sort(hashes, 0, hashesCount);
+            int distinct = 0;
+            for(int i = 0; i < hashesCount; i++){
+                if(i == 0 || hashes[i] != hashes[i - 1]){
+                    hashes[distinct++] = hashes[i];
+                }
+            }
+            long[] bloom = new long[Math.max(1, (distinct * BLOOM_BITS_PER_USER + 63) / 64)];
+            for(int i = 0; i < distinct; i++){
+                for(int j = 0; j < BLOOM_HASHES; j++){
+                    int bit = bloomBit(hashes[i], j, bloom);
+                    bloom[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return bloom;
+        }
+    }
+}
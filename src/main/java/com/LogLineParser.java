@@ -0,0 +1,114 @@
+package com;
+
+import java.nio.ByteBuffer;
+
+// Parses "yyyy-MM-dd HH:mm:ss [username] : message" straight from bytes. Other layouts are parsed by a FormatLineParser
+public class LogLineParser {
+
+    private static final int TIMESTAMP_LENGTH = 19;
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private ErrorType failure;
+
+    public boolean parse(ByteBuffer buffer, int start, int end, RawLogEntry entry){
+        if(end - start < TIMESTAMP_LENGTH + 7){
+            return fail(ErrorType.SHORT_LINE);
+        }
+        long epochSecond = parseTimestamp(buffer, start);
+        if(epochSecond == Long.MIN_VALUE){
+            return fail(ErrorType.TIMESTAMP);
+        }
+        int position = start + TIMESTAMP_LENGTH;
+        if(!isSpace(buffer.get(position++)) || buffer.get(position++) != '['){
+            return fail(ErrorType.SEPARATOR);
+        }
+        int usernameStart = position;
+        while(position < end && isWordCharacter(buffer.get(position))){
+            position++;
+        }
+        int usernameEnd = position;
+        if(usernameEnd == usernameStart || end - position < 4){
+            return fail(ErrorType.USERNAME);
+        }
+        if(buffer.get(position) != ']' || !isSpace(buffer.get(position + 1))
+                || buffer.get(position + 2) != ':' || !isSpace(buffer.get(position + 3))){
+            // A name that stops before its bracket has a character that is not allowed in it
+            return fail(buffer.get(position) == ']' ? ErrorType.SEPARATOR : ErrorType.USERNAME);
+        }
+        entry.set(buffer, epochSecond, usernameStart, usernameEnd, position + 4, end);
+        return true;
+    }
+
+    // Why the last parse() returned false
+    public ErrorType getFailure(){
+        return this.failure;
+    }
+
+    boolean fail(ErrorType failure){
+        this.failure = failure;
+        return false;
+    }
+
+    static long parseTimestamp(ByteBuffer buffer, int start){
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        int hour = digits(buffer, start + 11, 2);
+        int minute = digits(buffer, start + 14, 2);
+        int second = digits(buffer, start + 17, 2);
+        if(buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || !isSpace(buffer.get(start + 10))
+                || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':'){
+            return Long.MIN_VALUE;
+        }
+        return epochSecond(year, month, day, hour, minute, second);
+    }
+
+    // Long.MIN_VALUE when a field is missing (negative) or out of range
+    static long epochSecond(int year, int month, int day, int hour, int minute, int second){
+        if((year | month | day | hour | minute | second) < 0){
+            return Long.MIN_VALUE;
+        }
+        if(month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59){
+            return Long.MIN_VALUE;
+        }
+        // Same as the SMART resolver of DateTimeFormatter: 29-31 are moved back to the last day of the month
+        day = Math.min(day, lengthOfMonth(year, month));
+        return epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+    }
+
+    static long epochDay(int year, int month, int day){
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month){
+        if(month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))){
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    static int digits(ByteBuffer buffer, int start, int count){
+        int result = 0;
+        for(int i = start; i < start + count; i++){
+            int digit = buffer.get(i) - '0';
+            if(digit < 0 || digit > 9){
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    static boolean isSpace(byte b){
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    static boolean isWordCharacter(byte b){
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+}
@@ -0,0 +1,272 @@
+package com;
+
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Staged analysis: I/O threads cut chunks into pooled line blocks, parse threads filter the lines into batches and the
+// calling thread aggregates the batches. Every queue is bounded, so a stage that runs ahead waits for the next one
+public class LogPipeline {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int BATCH_SIZE = 16 * 1024;
+    private static final int QUEUED_PER_THREAD = 2;
+
+    private static final LineBlock END_OF_BLOCKS = new LineBlock(0);
+    private static final LogEntryBatch END_OF_BATCHES = new LogEntryBatch(null, 0);
+
+    private final Queue<FileChunk> chunks;
+    private final Map<String, Optional<?>> arguments;
+    private final EnumSet<GroupingOptions> groupingOptions;
+    private final int ioThreads;
+    private final int parseThreads;
+    private final ActivitySketches sketches;
+    private final BlockingQueue<LineBlock> freeBlocks;
+    private final BlockingQueue<LineBlock> blocks;
+    private final BlockingQueue<LogEntryBatch> batches;
+    private final Map<UsernameDictionary, BlockingQueue<LogEntryBatch>> freeBatches = new HashMap<>();
+    private final AtomicInteger runningReaders;
+    // First exception of a reader or parser thread, rethrown by run() so a failed stage does not pass for a finished one
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AnalysisStats stats = AnalysisStats.current();
+    private final ErrorReport errorReport = ErrorReport.current();
+
+    LogPipeline(List<FileChunk> chunks, Map<String, Optional<?>> arguments, EnumSet<GroupingOptions> groupingOptions, int ioThreads, int parseThreads,
+                ActivitySketches sketches){
+        this.chunks = new ConcurrentLinkedQueue<>(chunks);
+        this.arguments = arguments;
+        this.groupingOptions = groupingOptions;
+        this.ioThreads = ioThreads;
+        this.parseThreads = parseThreads;
+        this.sketches = sketches;
+        this.freeBlocks = new ArrayBlockingQueue<>((ioThreads + parseThreads) * QUEUED_PER_THREAD);
+        for(int i = 0; i < (ioThreads + parseThreads) * QUEUED_PER_THREAD; i++){
+            freeBlocks.add(new LineBlock(BLOCK_SIZE));
+        }
+        this.blocks = new ArrayBlockingQueue<>(freeBlocks.size() + parseThreads);
+        // Room for every batch a parser owns and its end marker, so handing a batch over never waits
+        this.batches = new ArrayBlockingQueue<>(parseThreads * (QUEUED_PER_THREAD + 1));
+        this.runningReaders = new AtomicInteger(ioThreads);
+    }
+
+    public Map run() throws InterruptedException {
+        Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        Map<UsernameDictionary, BatchAggregator<Map>> aggregators = new HashMap<>();
+        ExecutorService readers = Executors.newFixedThreadPool(ioThreads, namedThreads("reader"));
+        ExecutorService parsers = Executors.newFixedThreadPool(parseThreads, namedThreads("parser"));
+        try {
+            for(int i = 0; i < parseThreads; i++){
+                UsernameDictionary usernames = new UsernameDictionary();
+                BlockingQueue<LogEntryBatch> free = new ArrayBlockingQueue<>(QUEUED_PER_THREAD);
+                for(int j = 0; j < QUEUED_PER_THREAD; j++){
+                    free.add(new LogEntryBatch(usernames, BATCH_SIZE));
+                }
+                freeBatches.put(usernames, free);
+                aggregators.put(usernames, new BatchAggregator<>(container, groupingOptions, (ChronoUnit)arguments.get("Gtime").orElse(null)));
+                parsers.execute(new Parser(usernames, free));
+            }
+            for(int i = 0; i < ioThreads; i++){
+                readers.execute(this::readChunks);
+            }
+            int runningParsers = parseThreads;
+            while(runningParsers > 0){
+                LogEntryBatch batch = take(batches, "aggregator.batches");
+                if(batch == END_OF_BATCHES){
+                    runningParsers--;
+                    continue;
+                }
+                long start = stats == null ? 0 : System.nanoTime();
+                aggregators.get(batch.getUsernames()).add(batch);
+                if(stats != null){
+                    stats.addStageTime("aggregate", System.nanoTime() - start);
+                }
+                batch.clear();
+                freeBatches.get(batch.getUsernames()).put(batch);
+            }
+            rethrowFailure();
+            aggregators.values().forEach(BatchAggregator::flush);
+        } finally {
+            readers.shutdownNow();
+            parsers.shutdownNow();
+        }
+        return container;
+    }
+
+    private void readChunks(){
+        long readNanos = 0;
+        ErrorCollector errors = new ErrorCollector();
+        try {
+            FileChunk chunk;
+            while((chunk = chunks.poll()) != null){
+                try(LineBlockReader blockReader = new LineBlockReader(chunk)){
+                    while(true){
+                        LineBlock block = take(freeBlocks, "reader.freeBlocks");
+                        long start = stats == null ? 0 : System.nanoTime();
+                        boolean read = blockReader.read(block);
+                        if(stats != null){
+                            readNanos += System.nanoTime() - start;
+                        }
+                        if(!read){
+                            freeBlocks.put(block);
+                            break;
+                        }
+                        put(blocks, block, "reader.blocks", "blocks");
+                    }
+                } catch (IOException e) {
+                    errors.addUnreadable(chunk, e);
+                }
+                if(stats != null){
+                    stats.addChunk(chunk.length());
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            if(errorReport != null){
+                errorReport.add(errors);
+            }
+            if(stats != null){
+                stats.addStageTime("read", readNanos);
+                stats.addThreadTime(readNanos);
+            }
+            if(runningReaders.decrementAndGet() == 0){
+                for(int i = 0; i < parseThreads; i++){
+                    blocks.offer(END_OF_BLOCKS);
+                }
+            }
+        }
+    }
+
+    private void rethrowFailure(){
+        Throwable first = failure.get();
+        if(first instanceof Error){
+            throw (Error)first;
+        } else if(first != null){
+            throw (RuntimeException)first;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String stage){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, stage + "-" + count.incrementAndGet());
+    }
+
+    private <E> E take(BlockingQueue<E> queue, String waiter) throws InterruptedException {
+        if(stats == null){
+            return queue.take();
+        }
+        long start = System.nanoTime();
+        E element = queue.take();
+        stats.addWaitTime(waiter, System.nanoTime() - start);
+        return element;
+    }
+
+    private <E> void put(BlockingQueue<E> queue, E element, String waiter, String queueName) throws InterruptedException {
+        if(stats == null){
+            queue.put(element);
+            return;
+        }
+        long start = System.nanoTime();
+        queue.put(element);
+        stats.addWaitTime(waiter, System.nanoTime() - start);
+        stats.recordQueueDepth(queueName, queue.size());
+    }
+
+    private class Parser implements Runnable, LogReader.Handler {
+        private final LogReader reader;
+        private final FilterPlan filter;
+        private final BlockingQueue<LogEntryBatch> free;
+        private final ActivitySketches parserSketches = sketches == null ? null : sketches.emptyCopy();
+        private final ErrorCollector errors = new ErrorCollector();
+        private LogEntryBatch batch;
+        private FileChunk chunk;
+        private long entries;
+        private long malformedLines;
+        private long matchedRecords;
+
+        Parser(UsernameDictionary usernames, BlockingQueue<LogEntryBatch> free){
+            this.reader = new LogReader(LogFormat.newParser(arguments), usernames);
+            this.filter = new FilterPlan(arguments);
+            this.free = free;
+        }
+
+        @Override
+        public void run() {
+            long parseNanos = 0;
+            try {
+                batch = free.take();
+                while(true){
+                    LineBlock block = take(blocks, "parser.blocks");
+                    if(block == END_OF_BLOCKS){
+                        break;
+                    }
+                    chunk = block.getChunk();
+                    long start = stats == null ? 0 : System.nanoTime();
+                    reader.read(block, this);
+                    if(stats != null){
+                        parseNanos += System.nanoTime() - start;
+                        stats.addLines(entries + malformedLines, malformedLines, matchedRecords);
+                        entries = 0;
+                        malformedLines = 0;
+                        matchedRecords = 0;
+                    }
+                    freeBlocks.put(block);
+                }
+                if(batch.size() > 0){
+                    put(batches, batch, "parser.batches", "batches");
+                }
+                if(sketches != null){
+                    sketches.merge(parserSketches);
+                }
+            } catch (InterruptedException | CancellationException ignored) {
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                if(errorReport != null){
+                    errorReport.add(errors);
+                }
+                batches.offer(END_OF_BATCHES);
+                if(stats != null){
+                    filter.flushRejections(stats);
+                    stats.addStageTime("parse", parseNanos);
+                    stats.addThreadTime(parseNanos);
+                }
+            }
+        }
+
+        @Override
+        public void onEntry(RawLogEntry entry) {
+            entries++;
+            if(!filter.test(entry)){
+                return;
+            }
+            matchedRecords++;
+            if(parserSketches != null){
+                parserSketches.add(entry);
+            }
+            if(groupingOptions.isEmpty()){
+                return;
+            }
+            batch.add(entry);
+            if(batch.isFull()){
+                try {
+                    put(batches, batch, "parser.batches", "batches");
+                    batch = take(free, "parser.freeBatches");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+            }
+        }
+
+        @Override
+        public void onMalformedLine(long lineNumber, ErrorType error) {
+            malformedLines++;
+            errors.add(chunk, lineNumber, error);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Reads a chunk block by block into heap buffers; the subclasses read the file in other ways
+public class LogReader {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    public interface Handler {
+        void onEntry(RawLogEntry entry);
+
+        void onMalformedLine(long lineNumber, ErrorType error);
+    }
+
+    private final LogLineParser parser;
+    private final RawLogEntry entry;
+
+    public LogReader(LogLineParser parser, UsernameDictionary usernames){
+        this.parser = parser;
+        this.entry = new RawLogEntry(usernames);
+    }
+
+    public void read(FileChunk chunk, Handler handler) throws IOException {
+        LineBlock block = new LineBlock(BLOCK_SIZE);
+        try(LineBlockReader blockReader = new LineBlockReader(chunk)){
+            while(blockReader.read(block)){
+                read(block, handler);
+            }
+        }
+    }
+
+    public void read(LineBlock block, Handler handler){
+        ByteBuffer buffer = ByteBuffer.wrap(block.getBytes(), 0, block.getLength());
+        byte[] bytes = block.getBytes();
+        long lineNumber = block.getFirstLineNumber();
+        int lineStart = 0;
+        for(int i = 0; i < block.getLength(); i++){
+            if(bytes[i] == '\n'){
+                handleLine(buffer, block.getPosition(), lineStart, i, lineNumber++, handler);
+                lineStart = i + 1;
+            }
+        }
+        if(lineStart < block.getLength()){
+            handleLine(buffer, block.getPosition(), lineStart, block.getLength(), lineNumber, handler);
+        }
+    }
+
+    protected void handleLine(ByteBuffer buffer, long bufferPosition, int start, int end, long lineNumber, Handler handler){
+        entry.setOffset(bufferPosition + start);
+        if(end > start && buffer.get(end - 1) == '\r'){
+            end--;
+        }
+        if(parser.parse(buffer, start, end, entry)){
+            handler.onEntry(entry);
+        } else {
+            handler.onMalformedLine(lineNumber, parser.getFailure());
+        }
+    }
+}
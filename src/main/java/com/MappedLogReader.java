@@ -0,0 +1,47 @@
+package com;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class MappedLogReader extends LogReader {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    public MappedLogReader(LogLineParser parser, UsernameDictionary usernames){
+        super(parser, usernames);
+    }
+
+    // Maps the chunk window by window; a window always ends on a complete line unless it is the last one
+    @Override
+    public void read(FileChunk chunk, Handler handler) throws IOException {
+        try(FileChannel channel = FileChannel.open(chunk.getFile(), StandardOpenOption.READ)){
+            long end = Math.min(chunk.getEnd(), channel.size());
+            long position = chunk.getStart();
+            long lineNumber = 1;
+            while(position < end){
+                int windowSize = (int)Math.min(WINDOW_SIZE, end - position);
+                boolean lastWindow = position + windowSize == end;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int lineStart = 0;
+                for(int i = 0; i < windowSize; i++){
+                    if(buffer.get(i) == '\n'){
+                        handleLine(buffer, position, lineStart, i, lineNumber++, handler);
+                        lineStart = i + 1;
+                    }
+                }
+                if(lastWindow){
+                    if(lineStart < windowSize){
+                        handleLine(buffer, position, lineStart, windowSize, lineNumber, handler);
+                    }
+                    position = end;
+                } else if(lineStart == 0){
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + position + " in file " + chunk.getFile());
+                } else {
+                    position += lineStart;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Counts of one shard of the input, written by -partial runs and added up by the merge command
+public class PartialAggregate {
+
+    private static final int MAGIC = 0x4c504152;
+    private static final int VERSION = 2;
+
+    private final String argumentsKey;
+    private final EnumSet<GroupingOptions> groupingOptions;
+    private final ChronoUnit timeUnit;
+    // The -Gfield field the counts are grouped by instead of the username, null for usernames
+    private final String groupField;
+    private final Map container;
+
+    public PartialAggregate(String argumentsKey, EnumSet<GroupingOptions> groupingOptions, ChronoUnit timeUnit, String groupField, Map container){
+        this.argumentsKey = argumentsKey;
+        this.groupingOptions = groupingOptions;
+        this.timeUnit = timeUnit;
+        this.groupField = groupField;
+        this.container = container;
+    }
+
+    public PartialAggregate(Map<String, Optional<?>> arguments, EnumSet<GroupingOptions> groupingOptions, Map container){
+        this(Checkpoint.argumentsKey(arguments), groupingOptions, (ChronoUnit)arguments.get("Gtime").orElse(null),
+                (String)arguments.getOrDefault("Gfield", Optional.empty()).orElse(null), container);
+    }
+
+    public EnumSet<GroupingOptions> getGroupingOptions(){
+        return this.groupingOptions;
+    }
+
+    public ChronoUnit getTimeUnit(){
+        return this.timeUnit;
+    }
+
+    public String getGroupField(){
+        return this.groupField;
+    }
+
+    public Map getContainer(){
+        return this.container;
+    }
+
+    public void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(argumentsKey);
+            output.writeBoolean(groupingOptions.contains(GroupingOptions.USERNAME));
+            output.writeUTF(timeUnit == null ? "" : timeUnit.name());
+            output.writeUTF(groupField == null ? "" : groupField);
+            ContainerIO.write(output, container, groupingOptions);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static PartialAggregate read(Path path) throws IOException {
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))){
+            if(input.readInt() != MAGIC || input.readInt() != VERSION){
+                throw new IOException(path + " is not a partial aggregate");
+            }
+            String argumentsKey = input.readUTF();
+            boolean username = input.readBoolean();
+            String timeUnitName = input.readUTF();
+            ChronoUnit timeUnit = timeUnitName.isEmpty() ? null : ChronoUnit.valueOf(timeUnitName);
+            String groupField = input.readUTF();
+            EnumSet<GroupingOptions> groupingOptions = EnumSet.noneOf(GroupingOptions.class);
+            if(username){
+                groupingOptions.add(GroupingOptions.USERNAME);
+            }
+            if(timeUnit != null){
+                groupingOptions.add(GroupingOptions.TIMEUNIT);
+            }
+            return new PartialAggregate(argumentsKey, groupingOptions, timeUnit, groupField.isEmpty() ? null : groupField, ContainerIO.read(input, groupingOptions));
+        }
+    }
+
+    // Partials can be merged in any order and grouping, but only when they were collected with the same filters and grouping
+    public static PartialAggregate merge(List<Path> paths) throws IOException {
+        PartialAggregate merged = null;
+        for(Path path: paths){
+            PartialAggregate partial = read(path);
+            if(merged == null){
+                merged = partial;
+            } else if(!merged.argumentsKey.equals(partial.argumentsKey)){
+                throw new IOException(path + " was written with other filters or grouping than " + paths.get(0));
+            } else {
+                LogAnalyzeProcessor.mergeContainers(merged.container, partial.container, merged.groupingOptions);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,226 @@
+package com;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Drops the files that cannot have a line between -since and -until before they are split into chunks. The time range
+// of a file comes from a date in its name (-prunePattern) or from its first and last lines (-prune), which assumes that
+// the lines of a file are in time order. Compressed files are only checked by name and first line, since their last
+// line is at the end of the whole stream
+public class PartitionPruner {
+
+    private static final int PROBE_SIZE = 64 * 1024;
+    private static final int MAX_PROBE_SIZE = 1024 * 1024;
+
+    // A file name date such as yyyy-MM-dd in app-2020-01-30.log, covering one unit of its smallest part
+    public static class NamePattern {
+        private final String definition;
+        private final Pattern pattern;
+        private final List<Character> parts = new ArrayList<>();
+        private final ChronoUnit unit;
+
+        private NamePattern(String definition){
+            this.definition = definition;
+            StringBuilder regex = new StringBuilder();
+            int i = 0;
+            while(i < definition.length()){
+                char c = definition.charAt(i);
+                int runEnd = i;
+                while(runEnd < definition.length() && definition.charAt(runEnd) == c){
+                    runEnd++;
+                }
+                if("yMdH".indexOf(c) >= 0){
+                    if(runEnd - i != (c == 'y' ? 4 : 2) || parts.contains(c)){
+                        throw new IllegalArgumentException("Unsupported file name date pattern " + definition + ", use yyyy MM dd and HH");
+                    }
+                    regex.append("(\\d{").append(runEnd - i).append("})");
+                    parts.add(c);
+                } else {
+                    regex.append(Pattern.quote(definition.substring(i, runEnd)));
+                }
+                i = runEnd;
+            }
+            if(!parts.contains('y')){
+                throw new IllegalArgumentException("A file name date pattern needs a yyyy year: " + definition);
+            }
+            this.pattern = Pattern.compile(regex.toString());
+            this.unit = parts.contains('H') ? ChronoUnit.HOURS : parts.contains('d') ? ChronoUnit.DAYS
+                    : parts.contains('M') ? ChronoUnit.MONTHS : ChronoUnit.YEARS;
+        }
+
+        public static NamePattern compile(String definition){
+            return new NamePattern(definition);
+        }
+
+        public String getDefinition(){
+            return this.definition;
+        }
+
+        // First and last epoch second of the date in the name, or null when the name has none
+        long[] range(Path file){
+            Matcher matcher = pattern.matcher(file.getFileName().toString());
+            if(!matcher.find()){
+                return null;
+            }
+            int year = 0;
+            int month = 1;
+            int day = 1;
+            int hour = 0;
+            for(int i = 0; i < parts.size(); i++){
+                int value = Integer.parseInt(matcher.group(i + 1));
+                switch(parts.get(i)){
+                    case 'y': year = value; break;
+                    case 'M': month = value; break;
+                    case 'd': day = value; break;
+                    default: hour = value;
+                }
+            }
+            LocalDateTime start;
+            try {
+                start = LocalDateTime.of(year, month, day, hour, 0);
+            } catch (DateTimeException e) {
+                return null;
+            }
+            return new long[]{start.toEpochSecond(ZoneOffset.UTC), start.plus(1, unit).toEpochSecond(ZoneOffset.UTC) - 1};
+        }
+    }
+
+    private final long since;
+    private final long until;
+    private final NamePattern namePattern;
+    private final boolean readLines;
+    private final LogLineParser parser;
+    private final RawLogEntry entry = new RawLogEntry(new UsernameDictionary());
+
+    PartitionPruner(Map<String, Optional<?>> arguments){
+        this.since = arguments.get("since").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(Long.MIN_VALUE);
+        this.until = arguments.get("until").map(value -> ((LocalDateTime)value).toEpochSecond(ZoneOffset.UTC)).orElse(Long.MAX_VALUE);
+        this.namePattern = arguments.get("prunePattern").map(value -> (NamePattern)value).orElse(null);
+        this.readLines = arguments.get("prune").isPresent();
+        this.parser = LogFormat.newParser(arguments);
+    }
+
+    public static boolean isEnabled(Map<String, Optional<?>> arguments){
+        return (arguments.get("prune").isPresent() || arguments.get("prunePattern").isPresent())
+                && (arguments.get("since").isPresent() || arguments.get("until").isPresent());
+    }
+
+    public List<Path> select(List<Path> files) throws IOException {
+        AnalysisStats stats = AnalysisStats.current();
+        long start = stats == null ? 0 : System.nanoTime();
+        List<Path> selected = new ArrayList<>();
+        for(Path file: files){
+            if(mightMatch(file)){
+                selected.add(file);
+            }
+        }
+        if(stats != null){
+            stats.addStageTime("prune", System.nanoTime() - start);
+            stats.addRejections("file", files.size() - selected.size());
+        }
+        return selected;
+    }
+
+    // Same bounds as FilterPlan: a line matches when since < epoch second < until
+    private boolean mightMatch(Path file) throws IOException {
+        long[] range = namePattern == null ? null : namePattern.range(file);
+        if(range == null && readLines){
+            range = lineRange(file);
+        }
+        return range == null || (range[1] > since && range[0] < until);
+    }
+
+    // Epoch seconds of the first and last lines that parse, Long.MAX_VALUE for a last line that is not read
+    private long[] lineRange(Path file) throws IOException {
+        if(file.toString().endsWith(CompressedLogReader.SUFFIX)){
+            try(InputStream input = new GZIPInputStream(Files.newInputStream(file))){
+                byte[] head = input.readNBytes(PROBE_SIZE);
+                long first = firstEpochSecond(ByteBuffer.wrap(head), head.length < PROBE_SIZE);
+                return first == Long.MIN_VALUE ? null : new long[]{first, Long.MAX_VALUE};
+            }
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = channel.size();
+            long first = Long.MIN_VALUE;
+            long last = Long.MIN_VALUE;
+            for(int probe = PROBE_SIZE; first == Long.MIN_VALUE && probe <= MAX_PROBE_SIZE; probe *= 4){
+                ByteBuffer buffer = read(channel, 0, (int)Math.min(probe, size));
+                first = firstEpochSecond(buffer, buffer.limit() == size);
+                if(buffer.limit() == size){
+                    break;
+                }
+            }
+            // Reads backwards from the end in growing steps until a whole line parses
+            for(int probe = PROBE_SIZE; last == Long.MIN_VALUE && probe <= MAX_PROBE_SIZE; probe *= 4){
+                long position = Math.max(0, size - probe);
+                ByteBuffer buffer = read(channel, position, (int)(size - position));
+                last = lastEpochSecond(buffer, position == 0);
+                if(position == 0){
+                    break;
+                }
+            }
+            return first == Long.MIN_VALUE || last == Long.MIN_VALUE ? null : new long[]{first, last};
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0){
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // The part after the last newline is only a whole line when the buffer ends at the end of the file
+    private long firstEpochSecond(ByteBuffer buffer, boolean toFileEnd){
+        int lineStart = 0;
+        for(int i = 0; i <= buffer.limit(); i++){
+            if(i == buffer.limit() ? toFileEnd : buffer.get(i) == '\n'){
+                long epochSecond = parse(buffer, lineStart, i);
+                if(epochSecond != Long.MIN_VALUE){
+                    return epochSecond;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    // The part before the first newline is only a whole line when the buffer starts at the beginning of the file
+    private long lastEpochSecond(ByteBuffer buffer, boolean fromFileStart){
+        int lineEnd = buffer.limit();
+        for(int i = buffer.limit() - 1; i >= -1; i--){
+            if(i == -1 ? fromFileStart : buffer.get(i) == '\n'){
+                long epochSecond = parse(buffer, i + 1, lineEnd);
+                if(epochSecond != Long.MIN_VALUE){
+                    return epochSecond;
+                }
+                lineEnd = i;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private long parse(ByteBuffer buffer, int start, int end){
+        if(end > start && buffer.get(end - 1) == '\r'){
+            end--;
+        }
+        return end > start && parser.parse(buffer, start, end, entry) ? entry.getEpochSecond() : Long.MIN_VALUE;
+    }
+}
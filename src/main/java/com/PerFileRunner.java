@@ -0,0 +1,81 @@
+package com;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Reads every chunk on its own thread. A thread only starts once one of the openFiles analyzers is free, which bounds
+// both the open files and the memory held by the analyzers
+public class PerFileRunner {
+
+    private final Map<String, Optional<?>> arguments;
+    private final EnumSet<GroupingOptions> groupingOptions;
+    private final Map<Path, List<LogIndex.Block>> indexBlocks;
+    private final int openFiles;
+    private final ActivitySketches sketches;
+
+    PerFileRunner(Map<String, Optional<?>> arguments, EnumSet<GroupingOptions> groupingOptions, Map<Path, List<LogIndex.Block>> indexBlocks, int openFiles,
+                  ActivitySketches sketches){
+        this.arguments = arguments;
+        this.groupingOptions = groupingOptions;
+        this.indexBlocks = indexBlocks;
+        this.openFiles = openFiles;
+        this.sketches = sketches;
+    }
+
+    public Map run(List<FileChunk> chunks) throws InterruptedException {
+        List<Slot> allSlots = new ArrayList<>();
+        BlockingQueue<Slot> slots = new ArrayBlockingQueue<>(openFiles);
+        for(int i = 0; i < Math.min(openFiles, chunks.size()); i++){
+            Slot slot = new Slot();
+            allSlots.add(slot);
+            slots.add(slot);
+        }
+        AnalysisStats stats = AnalysisStats.current();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for(FileChunk chunk: chunks){
+                long start = stats == null ? 0 : System.nanoTime();
+                Slot slot = slots.take();
+                if(stats != null){
+                    stats.addWaitTime("openFiles", System.nanoTime() - start);
+                }
+                executor.execute(() -> {
+                    try {
+                        slot.analyze(chunk);
+                    } finally {
+                        slots.add(slot);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        for(Slot slot: allSlots){
+            LogAnalyzeProcessor.mergeContainers(container, slot.container, groupingOptions);
+            if(sketches != null){
+                sketches.merge(slot.sketches);
+            }
+        }
+        return container;
+    }
+
+    private class Slot {
+        private final List<FileChunk> chunks = new ArrayList<>(1);
+        private final Map container = LogAnalyzeProcessor.newContainer(groupingOptions);
+        private final ActivitySketches sketches = PerFileRunner.this.sketches == null ? null : PerFileRunner.this.sketches.emptyCopy();
+        private final LogAnalyzer<Map> analyzer = new LogAnalyzer<>(chunks, arguments, container, groupingOptions, indexBlocks, sketches);
+
+        void analyze(FileChunk chunk){
+            chunks.clear();
+            chunks.add(chunk);
+            analyzer.run();
+        }
+    }
+}
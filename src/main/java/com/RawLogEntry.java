@@ -0,0 +1,143 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Mutable view of a line that is still in the read buffer; Strings and dates are only built when asked for
+public class RawLogEntry extends LogEntry {
+
+    private final UsernameDictionary usernames;
+
+    private ByteBuffer buffer;
+    private long offset;
+    private long epochSecond;
+    private int usernameStart;
+    private int usernameEnd;
+    private int messageStart;
+    private int messageEnd;
+    // Start and end of the extra fields of a LogFormat, and the one records are grouped by with -Gfield
+    private int[] fields;
+    private int groupField = -1;
+
+    private LocalDateTime dateTime;
+    private int usernameId;
+    private int groupId;
+    private String message;
+
+    public RawLogEntry(UsernameDictionary usernames){
+        super(null, null, null);
+        this.usernames = usernames;
+    }
+
+    void set(ByteBuffer buffer, long epochSecond, int usernameStart, int usernameEnd, int messageStart, int messageEnd){
+        this.buffer = buffer;
+        this.epochSecond = epochSecond;
+        this.usernameStart = usernameStart;
+        this.usernameEnd = usernameEnd;
+        this.messageStart = messageStart;
+        this.messageEnd = messageEnd;
+        this.dateTime = null;
+        this.usernameId = -1;
+        this.groupId = -1;
+        this.message = null;
+    }
+
+    void setFields(int[] fields, int groupField){
+        this.fields = fields;
+        this.groupField = groupField;
+    }
+
+    void setOffset(long offset){
+        this.offset = offset;
+    }
+
+    public long getOffset(){
+        return this.offset;
+    }
+
+    public ByteBuffer getBuffer(){
+        return this.buffer;
+    }
+
+    public int getUsernameStart(){
+        return this.usernameStart;
+    }
+
+    public int getUsernameEnd(){
+        return this.usernameEnd;
+    }
+
+    public int getMessageStart(){
+        return this.messageStart;
+    }
+
+    public int getMessageEnd(){
+        return this.messageEnd;
+    }
+
+    public int getUsernameId(){
+        if(usernameId == -1){
+            usernameId = usernames.idOf(buffer, usernameStart, usernameEnd);
+        }
+        return this.usernameId;
+    }
+
+    // Id of the value records are grouped by: the username, or the -Gfield field
+    public int getGroupId(){
+        if(groupField < 0){
+            return getUsernameId();
+        }
+        if(groupId == -1){
+            groupId = usernames.idOf(buffer, fields[groupField * 2], fields[groupField * 2 + 1]);
+        }
+        return this.groupId;
+    }
+
+    public int getFieldStart(int field){
+        return fields[field * 2];
+    }
+
+    public int getFieldEnd(int field){
+        return fields[field * 2 + 1];
+    }
+
+    public String getField(int field){
+        return decode(getFieldStart(field), getFieldEnd(field));
+    }
+
+    @Override
+    public long getEpochSecond(){
+        return this.epochSecond;
+    }
+
+    @Override
+    public LocalDateTime getDateTime(){
+        if(dateTime == null){
+            dateTime = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        }
+        return this.dateTime;
+    }
+
+    @Override
+    public String getUsername(){
+        return usernames.get(getUsernameId());
+    }
+
+    @Override
+    public String getMessage(){
+        if(message == null){
+            message = decode(messageStart, messageEnd);
+        }
+        return this.message;
+    }
+
+    private String decode(int start, int end){
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,356 @@
+package com;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Writes the counts row by row while walking the sorted keys of the container, so a report costs one buffer instead of
+// a String per row. Empty periods between the first and the last one are written as 0 without being added to the
+// container. Besides the padded text table it writes csv, json and a binary form: MAGIC, VERSION, grouped by username
+// (boolean), the time unit name or "", then the layout of ContainerIO in sorted order
+public class ReportWriter implements Closeable {
+
+    public enum Format { TEXT, CSV, JSON, BINARY }
+
+    private static final int MAGIC = 0x4c525054;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int COLUMN_WIDTH = 20;
+
+    private final Format format;
+    private final ChronoUnit chronoUnit;
+    // Column of the username, or of the -Gfield field
+    private final String keyColumn;
+    private final String keyName;
+    private final Writer writer;
+    private final DataOutputStream output;
+    private final char[] digits = new char[20];
+    private boolean firstRow = true;
+    private boolean nested;
+
+    public ReportWriter(Path path, Format format, ChronoUnit chronoUnit, String keyColumn) throws IOException {
+        this.format = format;
+        this.chronoUnit = chronoUnit;
+        this.keyColumn = keyColumn;
+        this.keyName = keyColumn.trim().toLowerCase(Locale.ROOT);
+        if(format == Format.BINARY){
+            this.writer = null;
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+        } else {
+            this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE);
+            this.output = null;
+        }
+    }
+
+    // The container is one of the three shapes of LogAnalyzeProcessor.newContainer
+    @SuppressWarnings("unchecked")
+    public void writeCounts(Map container, EnumSet<GroupingOptions> groupingOptions) throws IOException {
+        boolean byKey = groupingOptions.contains(GroupingOptions.USERNAME);
+        boolean byTime = groupingOptions.contains(GroupingOptions.TIMEUNIT);
+        if(!byKey && !byTime){
+            return;
+        }
+        begin(byKey, byTime);
+        if(byKey && byTime){
+            Map<String, Map<LocalDateTime, Long>> recordsCount = container;
+            String[] keys = sortedKeys(recordsCount.keySet());
+            // Every username gets the same periods
+            LocalDateTime first = null;
+            LocalDateTime last = null;
+            for(Map<LocalDateTime, Long> periodRecordsCount: recordsCount.values()){
+                for(LocalDateTime period: periodRecordsCount.keySet()){
+                    first = first == null || period.isBefore(first) ? period : first;
+                    last = last == null || period.isAfter(last) ? period : last;
+                }
+            }
+            if(output != null){
+                output.writeInt(keys.length);
+            }
+            for(String key: keys){
+                writeKeyPeriods(key, recordsCount.get(key), first, last);
+            }
+        } else if(byKey){
+            Map<String, Long> recordsCount = container;
+            String[] keys = sortedKeys(recordsCount.keySet());
+            if(output != null){
+                output.writeInt(keys.length);
+            }
+            for(String key: keys){
+                writeKeyCount(key, recordsCount.get(key));
+            }
+        } else {
+            Map<LocalDateTime, Long> periodRecordsCount = container;
+            LocalDateTime first = periodRecordsCount.isEmpty() ? null : Collections.min(periodRecordsCount.keySet());
+            LocalDateTime last = periodRecordsCount.isEmpty() ? null : Collections.max(periodRecordsCount.keySet());
+            writePeriods(null, periodRecordsCount, first, last);
+        }
+        end();
+    }
+
+    // A line of the text table, for the sections that only the text format has
+    public void writeLine(String line) throws IOException {
+        writer.write(line);
+        newLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(output != null){
+            output.close();
+        } else {
+            writer.close();
+        }
+    }
+
+    private void begin(boolean byKey, boolean byTime) throws IOException {
+        switch(format){
+            case TEXT:
+                if(!byTime){
+                    writer.write(keyColumn);
+                    writer.write("Count of records");
+                    newLine();
+                }
+                break;
+            case CSV:
+                writer.write(byKey ? (byTime ? csv(keyName) + ",period,count" : csv(keyName) + ",count") : "period,count");
+                newLine();
+                break;
+            case JSON:
+                writer.write('[');
+                break;
+            case BINARY:
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeBoolean(byKey);
+                output.writeUTF(byTime ? chronoUnit.name() : "");
+        }
+    }
+
+    private void end() throws IOException {
+        if(format == Format.JSON){
+            if(!firstRow){
+                newLine();
+            }
+            writer.write(']');
+            newLine();
+        }
+    }
+
+    private void writeKeyCount(String key, long count) throws IOException {
+        switch(format){
+            case TEXT:
+                writer.write(key);
+                pad(key.length());
+                writeLong(count);
+                newLine();
+                break;
+            case CSV:
+                writer.write(csv(key));
+                writer.write(',');
+                writeLong(count);
+                newLine();
+                break;
+            case JSON:
+                nextRow();
+                writer.write("{\"");
+                writer.write(keyName);
+                writer.write("\": ");
+                writeJsonString(key);
+                writer.write(", \"count\": ");
+                writeLong(count);
+                writer.write('}');
+                break;
+            case BINARY:
+                output.writeUTF(key);
+                output.writeLong(count);
+        }
+    }
+
+    private void writeKeyPeriods(String key, Map<LocalDateTime, Long> periodRecordsCount, LocalDateTime first, LocalDateTime last) throws IOException {
+        switch(format){
+            case TEXT:
+                writeLine(key);
+                writePeriods(null, periodRecordsCount, first, last);
+                break;
+            case CSV:
+                writePeriods(key, periodRecordsCount, first, last);
+                break;
+            case JSON:
+                nextRow();
+                writer.write("{\"");
+                writer.write(keyName);
+                writer.write("\": ");
+                writeJsonString(key);
+                writer.write(", \"periods\": [");
+                boolean firstKey = firstRow;
+                firstRow = true;
+                nested = true;
+                writePeriods(null, periodRecordsCount, first, last);
+                nested = false;
+                firstRow = firstKey;
+                writer.write("]}");
+                break;
+            case BINARY:
+                output.writeUTF(key);
+                writePeriods(null, periodRecordsCount, first, last);
+        }
+    }
+
+    // The rows of one period table; key is repeated on every csv row of a username and time report
+    private void writePeriods(String key, Map<LocalDateTime, Long> periodRecordsCount, LocalDateTime first, LocalDateTime last) throws IOException {
+        if(format == Format.TEXT){
+            writeLine(periodColumn(chronoUnit) + "Count of records");
+        } else if(format == Format.BINARY){
+            output.writeInt(first == null ? 0 : (int)chronoUnit.between(first, last) + 1);
+        }
+        for(LocalDateTime period = first; period != null && !period.isAfter(last); period = period.plus(1, chronoUnit)){
+            long count = periodRecordsCount.getOrDefault(period, 0L);
+            switch(format){
+                case TEXT:
+                    writePeriod(period);
+                    writer.write(periodPadding(chronoUnit));
+                    writeLong(count);
+                    newLine();
+                    break;
+                case CSV:
+                    if(key != null){
+                        writer.write(csv(key));
+                        writer.write(',');
+                    }
+                    writePeriod(period);
+                    writer.write(',');
+                    writeLong(count);
+                    newLine();
+                    break;
+                case JSON:
+                    nextRow();
+                    writer.write("{\"period\": \"");
+                    writePeriod(period);
+                    writer.write("\", \"count\": ");
+                    writeLong(count);
+                    writer.write('}');
+                    break;
+                case BINARY:
+                    output.writeLong(period.toEpochSecond(ZoneOffset.UTC));
+                    output.writeLong(count);
+            }
+        }
+    }
+
+    static String periodColumn(ChronoUnit chronoUnit){
+        switch(chronoUnit){
+            case HOURS: return "Hour                ";
+            case DAYS: return "Day                 ";
+            default: return "Month               ";
+        }
+    }
+
+    // What follows a formatted period to line its count up with the column
+    private static String periodPadding(ChronoUnit chronoUnit){
+        switch(chronoUnit){
+            case HOURS: return "    ";
+            case DAYS: return "          ";
+            default: return "             ";
+        }
+    }
+
+    // yyyy-MM-dd HH:mm, yyyy-MM-dd or yyyy-MM without a DateTimeFormatter
+    private void writePeriod(LocalDateTime period) throws IOException {
+        writePadded(period.getYear(), 4);
+        writer.write('-');
+        writePadded(period.getMonthValue(), 2);
+        if(chronoUnit == ChronoUnit.MONTHS){
+            return;
+        }
+        writer.write('-');
+        writePadded(period.getDayOfMonth(), 2);
+        if(chronoUnit == ChronoUnit.DAYS){
+            return;
+        }
+        writer.write(' ');
+        writePadded(period.getHour(), 2);
+        writer.write(':');
+        writePadded(period.getMinute(), 2);
+    }
+
+    private void writePadded(int value, int width) throws IOException {
+        int length = formatLong(value);
+        for(int i = length; i < width; i++){
+            writer.write('0');
+        }
+        writer.write(digits, digits.length - length, length);
+    }
+
+    private void writeLong(long value) throws IOException {
+        int length = formatLong(value);
+        writer.write(digits, digits.length - length, length);
+    }
+
+    // Writes the digits to the end of the digits buffer and returns how many there are
+    private int formatLong(long value){
+        if(value < 0){
+            String text = Long.toString(value);
+            text.getChars(0, text.length(), digits, digits.length - text.length());
+            return text.length();
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (char)('0' + value % 10);
+            value /= 10;
+        } while(value != 0);
+        return digits.length - position;
+    }
+
+    private void pad(int length) throws IOException {
+        for(int i = length; i < COLUMN_WIDTH; i++){
+            writer.write(' ');
+        }
+    }
+
+    private void nextRow() throws IOException {
+        if(!firstRow){
+            writer.write(',');
+        }
+        newLine();
+        writer.write(nested ? "    " : "  ");
+        firstRow = false;
+    }
+
+    private void newLine() throws IOException {
+        writer.write(System.lineSeparator());
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        writer.write('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                writer.write('\\');
+                writer.write(c);
+            } else if(c < 0x20){
+                writer.write(String.format("\\u%04x", (int)c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    private static String csv(String value){
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0){
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String[] sortedKeys(Set<String> keys){
+        String[] sorted = keys.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,146 @@
+package com;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Counts of earlier runs in a -cache directory, one entry per set of arguments holding the container of every file with
+// the size and modification time it had. Files that did not change are not read again. Reading an entry touches it,
+// and the least recently used entries are deleted when the directory grows over its size limit
+public class ResultCache {
+
+    private static final String SUFFIX = ".cache";
+    private static final int MAGIC = 0x4c434843;
+    private static final int VERSION = 1;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public ResultCache(Path directory, long maxBytes){
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static class FileResult {
+        private final long size;
+        private final long modifiedMillis;
+        private final Map container;
+
+        public FileResult(BasicFileAttributes attributes, Map container){
+            this(attributes.size(), attributes.lastModifiedTime().toMillis(), container);
+        }
+
+        private FileResult(long size, long modifiedMillis, Map container){
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.container = container;
+        }
+
+        public boolean matches(BasicFileAttributes attributes){
+            return size == attributes.size() && modifiedMillis == attributes.lastModifiedTime().toMillis();
+        }
+
+        public Map getContainer(){
+            return this.container;
+        }
+    }
+
+    // The results of the files of the entry, empty when there is none for these arguments
+    public Map<String, FileResult> load(String key, EnumSet<GroupingOptions> groupingOptions){
+        Path path = pathOf(key);
+        if(!Files.isRegularFile(path)){
+            return new HashMap<>();
+        }
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))){
+            if(input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(key)){
+                return new HashMap<>();
+            }
+            int filesCount = input.readInt();
+            Map<String, FileResult> files = new HashMap<>();
+            for(int i = 0; i < filesCount; i++){
+                String file = input.readUTF();
+                long size = input.readLong();
+                long modifiedMillis = input.readLong();
+                files.put(file, new FileResult(size, modifiedMillis, ContainerIO.read(input, groupingOptions)));
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return files;
+        } catch (IOException e) {
+            System.err.println("Cannot read cache entry " + path + ", analyzing all files again");
+            return new HashMap<>();
+        }
+    }
+
+    public void store(String key, Map<String, FileResult> files, EnumSet<GroupingOptions> groupingOptions) throws IOException {
+        Files.createDirectories(directory);
+        Path path = pathOf(key);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(key);
+            output.writeInt(files.size());
+            for(Map.Entry<String, FileResult> file: files.entrySet()){
+                output.writeUTF(file.getKey());
+                output.writeLong(file.getValue().size);
+                output.writeLong(file.getValue().modifiedMillis);
+                ContainerIO.write(output, file.getValue().container, groupingOptions);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict(path);
+    }
+
+    // Deletes the least recently used entries until the directory fits, keeping the one just written
+    private void evict(Path keep) throws IOException {
+        List<Path> entries;
+        try(Stream<Path> files = Files.list(directory)){
+            entries = files.filter(file -> file.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long total = 0;
+        for(Path entry: entries){
+            try {
+                BasicFileAttributes entryAttributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                attributes.put(entry, entryAttributes);
+                total += entryAttributes.size();
+            } catch (NoSuchFileException ignored) {
+                // Evicted by another run meanwhile
+            }
+        }
+        List<Path> oldestFirst = new ArrayList<>(attributes.keySet());
+        oldestFirst.sort(Comparator.comparing(entry -> attributes.get(entry).lastModifiedTime()));
+        for(Path entry: oldestFirst){
+            if(total <= maxBytes){
+                break;
+            }
+            if(!entry.equals(keep)){
+                Files.deleteIfExists(entry);
+                total -= attributes.get(entry).size();
+            }
+        }
+    }
+
+    private Path pathOf(String key){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for(int i = 0; i < 16; i++){
+                name.append(String.format("%02x", digest[i]));
+            }
+            return directory.resolve(name + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Space-Saving summary of the most active users in a fixed number of counters. A kept user is never under-counted and
+// is over-counted by at most its error; every user with more than total / capacity records is kept.
+// Users are told apart by a 64 bit hash of their name, the name itself is only decoded when a counter is taken over
+public class SpaceSaving {
+
+    private final int capacity;
+    private final long[] keys;
+    private final String[] names;
+    private final long[] counts;
+    private final long[] errors;
+    // Counters ordered by count, smallest first, and the position of every counter in it
+    private final int[] heap;
+    private final int[] heapPositions;
+    // Open addressing from key to counter
+    private final int[] slots;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity){
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.names = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        Arrays.fill(slots, -1);
+    }
+
+    public void add(long key, ByteBuffer buffer, int start, int end){
+        total++;
+        int counter = find(key);
+        if(counter >= 0){
+            counts[counter]++;
+            siftDown(heapPositions[counter]);
+        } else if(size < capacity){
+            put(key, decode(buffer, start, end), 1, 0);
+        } else {
+            // The least counted user gives its counter away; its count becomes the error of the new one
+            counter = heap[0];
+            removeSlot(keys[counter]);
+            keys[counter] = key;
+            names[counter] = decode(buffer, start, end);
+            errors[counter] = counts[counter];
+            counts[counter]++;
+            addSlot(key, counter);
+            siftDown(0);
+        }
+    }
+
+    // Mergeable summary merge: a user missing from one side may have had up to that side's smallest count there
+    public void merge(SpaceSaving other){
+        long minCount = size < capacity ? 0 : counts[heap[0]];
+        long otherMinCount = other.size < other.capacity ? 0 : other.counts[other.heap[0]];
+        List<Counter> merged = new ArrayList<>(size + other.size);
+        for(int counter = 0; counter < size; counter++){
+            int otherCounter = other.find(keys[counter]);
+            long otherCount = otherCounter >= 0 ? other.counts[otherCounter] : otherMinCount;
+            long otherError = otherCounter >= 0 ? other.errors[otherCounter] : otherMinCount;
+            merged.add(new Counter(keys[counter], names[counter], counts[counter] + otherCount, errors[counter] + otherError));
+        }
+        for(int counter = 0; counter < other.size; counter++){
+            if(find(other.keys[counter]) < 0){
+                merged.add(new Counter(other.keys[counter], other.names[counter], other.counts[counter] + minCount, other.errors[counter] + minCount));
+            }
+        }
+        merged.sort(Comparator.comparingLong((Counter counter) -> counter.count).reversed());
+        long mergedTotal = total + other.total;
+        size = 0;
+        Arrays.fill(slots, -1);
+        for(int i = 0; i < Math.min(capacity, merged.size()); i++){
+            Counter counter = merged.get(i);
+            put(counter.key, counter.name, counter.count, counter.error);
+        }
+        total = mergedTotal;
+    }
+
+    // The k most counted users, most counted first
+    public List<Counter> top(int k){
+        List<Counter> top = new ArrayList<>(size);
+        for(int counter = 0; counter < size; counter++){
+            top.add(new Counter(keys[counter], names[counter], counts[counter], errors[counter]));
+        }
+        top.sort(Comparator.comparingLong((Counter counter) -> counter.count).reversed().thenComparing(counter -> counter.name));
+        return top.subList(0, Math.min(k, top.size()));
+    }
+
+    public long getTotal(){
+        return this.total;
+    }
+
+    private void put(long key, String name, long count, long error){
+        int counter = size++;
+        keys[counter] = key;
+        names[counter] = name;
+        counts[counter] = count;
+        errors[counter] = error;
+        heap[counter] = counter;
+        heapPositions[counter] = counter;
+        addSlot(key, counter);
+        siftUp(counter);
+    }
+
+    private int find(long key){
+        int mask = slots.length - 1;
+        for(int slot = (int)key & mask; slots[slot] != -1; slot = (slot + 1) & mask){
+            if(keys[slots[slot]] == key){
+                return slots[slot];
+            }
+        }
+        return -1;
+    }
+
+    private void addSlot(long key, int counter){
+        int mask = slots.length - 1;
+        int slot = (int)key & mask;
+        while(slots[slot] != -1){
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = counter;
+    }
+
+    // Linear probing removal: later entries of the probe sequence are shifted back into the hole
+    private void removeSlot(long key){
+        int mask = slots.length - 1;
+        int hole = (int)key & mask;
+        while(keys[slots[hole]] != key){
+            hole = (hole + 1) & mask;
+        }
+        for(int slot = (hole + 1) & mask; slots[slot] != -1; slot = (slot + 1) & mask){
+            int home = (int)keys[slots[slot]] & mask;
+            if(((slot - home) & mask) >= ((slot - hole) & mask)){
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+        }
+        slots[hole] = -1;
+    }
+
+    private void siftUp(int position){
+        while(position > 0){
+            int parent = (position - 1) / 2;
+            if(counts[heap[parent]] <= counts[heap[position]]){
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position){
+        while(true){
+            int smallest = position;
+            int left = position * 2 + 1;
+            if(left < size && counts[heap[left]] < counts[heap[smallest]]){
+                smallest = left;
+            }
+            if(left + 1 < size && counts[heap[left + 1]] < counts[heap[smallest]]){
+                smallest = left + 1;
+            }
+            if(smallest == position){
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int first, int second){
+        int counter = heap[first];
+        heap[first] = heap[second];
+        heap[second] = counter;
+        heapPositions[heap[first]] = first;
+        heapPositions[heap[second]] = second;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end){
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static class Counter {
+        private final long key;
+        private final String name;
+        private final long count;
+        private final long error;
+
+        Counter(long key, String name, long count, long error){
+            this.key = key;
+            this.name = name;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getName(){
+            return this.name;
+        }
+
+        public long getCount(){
+            return this.count;
+        }
+
+        public long getError(){
+            return this.error;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+public class TimeBucketer {
+
+    private final ChronoUnit unit;
+
+    private LocalDateTime currentBucket;
+    private long currentBucketStart;
+    private long nextBucketStart;
+
+    public TimeBucketer(ChronoUnit unit){
+        this.unit = unit;
+    }
+
+    // Records mostly arrive in time order, so the last bucket is reused until a record falls outside of it
+    public LocalDateTime bucketOf(long epochSecond){
+        if(currentBucket == null || epochSecond < currentBucketStart || epochSecond >= nextBucketStart){
+            currentBucket = truncate(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC), unit);
+            currentBucketStart = currentBucket.toEpochSecond(ZoneOffset.UTC);
+            nextBucketStart = currentBucket.plus(1, unit).toEpochSecond(ZoneOffset.UTC);
+        }
+        return currentBucket;
+    }
+
+    public LocalDateTime bucketOf(LocalDateTime dateTime){
+        return bucketOf(dateTime.toEpochSecond(ZoneOffset.UTC));
+    }
+
+    public static LocalDateTime truncate(LocalDateTime dateTime, ChronoUnit unit){
+        switch(unit){
+            case HOURS: return dateTime.truncatedTo(ChronoUnit.HOURS);
+            case DAYS: return dateTime.truncatedTo(ChronoUnit.DAYS);
+            case MONTHS: return dateTime.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        }
+        throw new IllegalArgumentException("Unsupported period of time: " + unit);
+    }
+
+    public static void fillEmptyPeriods(Map<LocalDateTime, Long> periodRecordsCount, LocalDateTime minBucket, LocalDateTime maxBucket, ChronoUnit unit){
+        LocalDateTime bucket = minBucket;
+        while(!bucket.isAfter(maxBucket)){
+            periodRecordsCount.putIfAbsent(bucket, 0L);
+            bucket = bucket.plus(1, unit);
+        }
+    }
+}
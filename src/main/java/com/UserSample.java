@@ -0,0 +1,86 @@
+package com;
+
+import java.util.Arrays;
+
+// Distinct sampling: exact record counts of the users whose hash ends with at least `level` zero bits, so one in
+// 2^level users is kept whatever their activity. The level goes up whenever the sample outgrows its capacity.
+// Every worker keeps the same users for a level, so merged counts stay exact
+public class UserSample {
+
+    private final int capacity;
+    private long[] keys;
+    private long[] counts;
+    private int size;
+    private int level;
+
+    public UserSample(int capacity){
+        this.capacity = capacity;
+        this.keys = new long[Integer.highestOneBit(capacity * 2 - 1) * 4];
+        this.counts = new long[keys.length];
+    }
+
+    public void add(long hash){
+        add(hash, 1);
+    }
+
+    public void merge(UserSample other){
+        while(level < other.level){
+            raiseLevel();
+        }
+        for(int slot = 0; slot < other.keys.length; slot++){
+            if(other.counts[slot] > 0){
+                add(other.keys[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    // Record counts of the sampled users, in ascending order
+    public long[] sortedCounts(){
+        long[] sorted = new long[size];
+        int i = 0;
+        for(long count: counts){
+            if(count > 0){
+                sorted[i++] = count;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public long estimatedUsers(){
+        return (long)size << level;
+    }
+
+    private void add(long hash, long count){
+        if(Long.numberOfTrailingZeros(hash) < level){
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = (int)(hash >>> 32) & mask;
+        while(counts[slot] > 0 && keys[slot] != hash){
+            slot = (slot + 1) & mask;
+        }
+        if(counts[slot] == 0){
+            keys[slot] = hash;
+            size++;
+        }
+        counts[slot] += count;
+        while(size > capacity){
+            raiseLevel();
+        }
+    }
+
+    private void raiseLevel(){
+        level++;
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length];
+        counts = new long[oldCounts.length];
+        size = 0;
+        for(int slot = 0; slot < oldKeys.length; slot++){
+            if(oldCounts[slot] > 0){
+                add(oldKeys[slot], oldCounts[slot]);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class UsernameDictionary {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[][] keys = new byte[INITIAL_CAPACITY][];
+    // Threads handed a batch look up names while the owner keeps adding them. The names of the ids in a batch are
+    // written before the batch is put on a BlockingQueue of LogPipeline, and that handoff is what makes them visible.
+    // The field is volatile only so that a reader that sees the array grown by add() also sees what was copied into it
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    public UsernameDictionary(){
+        Arrays.fill(slots, -1);
+    }
+
+    public int idOf(ByteBuffer buffer, int start, int end){
+        int hash = hash(buffer, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while(slots[slot] != -1){
+            int id = slots[slot];
+            if(equals(keys[id], buffer, start, end)){
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] key = new byte[end - start];
+        for(int i = 0; i < key.length; i++){
+            key[i] = buffer.get(start + i);
+        }
+        return add(key, slot);
+    }
+
+    public int idOf(String username){
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        return idOf(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    public String get(int id){
+        return names[id];
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    private int add(byte[] key, int slot){
+        if(size == keys.length){
+            keys = Arrays.copyOf(keys, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        keys[size] = key;
+        names[size] = new String(key, StandardCharsets.UTF_8);
+        slots[slot] = size;
+        size++;
+        if(size * 2 > slots.length){
+            rehash();
+        }
+        return size - 1;
+    }
+
+    private void rehash(){
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+        for(int id = 0; id < size; id++){
+            int slot = hash(ByteBuffer.wrap(keys[id]), 0, keys[id].length) & mask;
+            while(slots[slot] != -1){
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end){
+        int hash = 1;
+        for(int i = start; i < end; i++){
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] key, ByteBuffer buffer, int start, int end){
+        if(key.length != end - start){
+            return false;
+        }
+        for(int i = 0; i < key.length; i++){
+            if(key[i] != buffer.get(start + i)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
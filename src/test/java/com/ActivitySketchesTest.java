@@ -0,0 +1,152 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivitySketchesTest {
+
+    @Test
+    void spaceSavingIsExactWhileTheUsersFit(){
+        SpaceSaving first = new SpaceSaving(16);
+        SpaceSaving second = new SpaceSaving(16);
+        Map<String, Long> expected = new HashMap<>();
+        for(int i = 0; i < 1000; i++){
+            String name = "u" + i % 13 % 10;
+            add(i % 2 == 0 ? first : second, name);
+            expected.merge(name, 1L, Long::sum);
+        }
+        first.merge(second);
+
+        assertEquals(1000, first.getTotal());
+        for(SpaceSaving.Counter counter: first.top(10)){
+            assertEquals(expected.get(counter.getName()).longValue(), counter.getCount());
+            assertEquals(0, counter.getError());
+        }
+        assertEquals(10, first.top(20).size());
+    }
+
+    // Every user over total / capacity records is kept, and its true count lies within [count - error, count]
+    @Test
+    void mergedSpaceSavingKeepsTheHeavyUsersWithinTheirError(){
+        int capacity = 64;
+        SpaceSaving[] workers = {new SpaceSaving(capacity), new SpaceSaving(capacity), new SpaceSaving(capacity)};
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for(int i = 0; i < 30000; i++){
+            String name = random.nextInt(4) == 0 ? "heavy" + random.nextInt(5) : "light" + random.nextInt(5000);
+            add(workers[random.nextInt(workers.length)], name);
+            expected.merge(name, 1L, Long::sum);
+        }
+        workers[0].merge(workers[1]);
+        workers[0].merge(workers[2]);
+
+        List<SpaceSaving.Counter> top = workers[0].top(capacity);
+        for(SpaceSaving.Counter counter: top){
+            long count = expected.getOrDefault(counter.getName(), 0L);
+            assertTrue(counter.getCount() >= count && counter.getCount() - counter.getError() <= count, counter.getName());
+        }
+        Set<String> topFive = new HashSet<>();
+        workers[0].top(5).forEach(counter -> topFive.add(counter.getName()));
+        assertEquals(new HashSet<>(Arrays.asList("heavy0", "heavy1", "heavy2", "heavy3", "heavy4")), topFive);
+    }
+
+    @Test
+    void mergedHyperLogLogsEqualOneOverAllUsers(){
+        HyperLogLog all = new HyperLogLog();
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for(int i = 0; i < 100000; i++){
+            long hash = hash("u" + i);
+            all.add(hash);
+            (i % 3 == 0 ? first : second).add(hash);
+            // Users seen by both workers are counted once
+            if(i % 10 == 0){
+                first.add(hash);
+            }
+        }
+        first.merge(second);
+
+        assertEquals(all.estimate(), first.estimate());
+        assertEquals(100000, first.estimate(), 100000 * 0.05);
+    }
+
+    @Test
+    void hyperLogLogCountsFewUsersClosely(){
+        HyperLogLog users = new HyperLogLog();
+        for(int i = 0; i < 100; i++){
+            users.add(hash("u" + i % 50));
+        }
+        assertEquals(50, users.estimate(), 2);
+    }
+
+    @Test
+    void mergedUserSamplesEqualOneOverAllRecords(){
+        UserSample all = new UserSample(256);
+        UserSample first = new UserSample(256);
+        UserSample second = new UserSample(256);
+        for(int i = 0; i < 50000; i++){
+            long hash = hash("u" + (i * 7919) % 5000);
+            all.add(hash);
+            (i % 4 == 0 ? first : second).add(hash);
+        }
+        first.merge(second);
+
+        assertArrayEquals(all.sortedCounts(), first.sortedCounts());
+        assertEquals(all.estimatedUsers(), first.estimatedUsers());
+        assertTrue(first.sortedCounts().length <= 256);
+        assertEquals(5000, first.estimatedUsers(), 5000 * 0.3);
+    }
+
+    @Test
+    void userSampleIsExactWhileTheUsersFit(){
+        UserSample sample = new UserSample(256);
+        for(int i = 0; i < 600; i++){
+            sample.add(hash("u" + i % 100 / 20 * 20 + i % 3));
+        }
+        assertEquals(15, sample.estimatedUsers());
+        assertEquals(600, Arrays.stream(sample.sortedCounts()).sum());
+    }
+
+    @Test
+    void workersMergeAllSketches() throws Exception {
+        String[] args = {"-since", "2000-01-01", "-top", "3", "-distinct", "-quantiles", "-Gtime", "1 day"};
+        ActivitySketches merged = ActivitySketches.create(App.parseArguments(new DefaultParser().parse(App.createOptions(), args)));
+        ActivitySketches single = merged.emptyCopy();
+        ActivitySketches[] workers = {merged.emptyCopy(), merged.emptyCopy()};
+        LogLineParser parser = new LogLineParser();
+        RawLogEntry entry = new RawLogEntry(new UsernameDictionary());
+        for(int i = 0; i < 3000; i++){
+            byte[] line = String.format("2020-01-%02d 10:00:00 [u%d] : m", 1 + i % 2, i % 3 == 0 ? 0 : i % 40).getBytes(StandardCharsets.UTF_8);
+            assertTrue(parser.parse(ByteBuffer.wrap(line), 0, line.length, entry));
+            single.add(entry);
+            workers[i % 2].add(entry);
+        }
+        merged.merge(workers[0]);
+        merged.merge(workers[1]);
+
+        assertEquals("u0", merged.getTopUsers().top(1).get(0).getName());
+        assertEquals(single.getTopUsers().top(1).get(0).getCount(), merged.getTopUsers().top(1).get(0).getCount());
+        assertEquals(new HashSet<>(Arrays.asList(LocalDateTime.of(2020, 1, 1, 0, 0), LocalDateTime.of(2020, 1, 2, 0, 0))),
+                merged.getDistinctUsers().keySet());
+        merged.getDistinctUsers().forEach((day, users) -> assertEquals(single.getDistinctUsers().get(day).estimate(), users.estimate()));
+        assertArrayEquals(single.getUserSample().sortedCounts(), merged.getUserSample().sortedCounts());
+    }
+
+    private static void add(SpaceSaving sketch, String name){
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        sketch.add(ActivitySketches.hash(buffer, 0, bytes.length), buffer, 0, bytes.length);
+    }
+
+    private static long hash(String name){
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return ActivitySketches.hash(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
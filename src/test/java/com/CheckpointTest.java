@@ -0,0 +1,128 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsFileStatesAndCounts() throws Exception {
+        EnumSet<GroupingOptions> groupingOptions = GroupingOptions.ALL;
+        Map<String, Map<LocalDateTime, Long>> container = new HashMap<>();
+        container.computeIfAbsent("alice", key -> new HashMap<>()).put(LocalDateTime.of(2020, 1, 1, 0, 0), 3L);
+        container.computeIfAbsent("bob", key -> new HashMap<>()).put(LocalDateTime.of(2020, 2, 1, 0, 0), 5L);
+        Map<String, Checkpoint.FileState> files = new HashMap<>();
+        files.put(Checkpoint.stateKey(Paths.get("app.log"), "inode-1"), new Checkpoint.FileState(100, 120, 42, false));
+        Path path = directory.resolve(Checkpoint.FILE_NAME);
+        new Checkpoint("key", files, container).write(path, groupingOptions);
+
+        Checkpoint loaded = Checkpoint.load(path, "key", groupingOptions);
+        assertNotNull(loaded);
+        assertEquals(container, loaded.getContainer());
+        Checkpoint.FileState state = loaded.getFiles().get(Checkpoint.stateKey(Paths.get("app.log"), "inode-1"));
+        assertEquals(100, state.getOffset());
+        assertEquals(120, state.getSize());
+        assertEquals(42, state.getFingerprint());
+        assertFalse(state.isCompressed());
+        assertNull(Checkpoint.load(path, "other arguments", groupingOptions));
+    }
+
+    @Test
+    void resumesFilesByFileKeyAndFingerprint() throws Exception {
+        Path log = write("app.log", 0, 100);
+        Path renamed = write("app-old.log", 0, 100);
+        Path other = write("other.log", 500, 100);
+        Map<String, Checkpoint.FileState> files = new HashMap<>();
+        files.put(Checkpoint.stateKey(log, "inode-1"), Checkpoint.stateOf(log, 2000, 2400));
+        Checkpoint checkpoint = new Checkpoint("key", files, new HashMap<String, Long>());
+
+        assertEquals(2000, checkpoint.resumeOffset(log, "inode-1", 2900));
+        // Renamed by rotation: same file under another name
+        assertEquals(2000, checkpoint.resumeOffset(renamed, "inode-1", 2400));
+        // A new file under the old name
+        assertEquals(0, checkpoint.resumeOffset(log, "inode-2", 2900));
+        // Truncated in place
+        assertEquals(0, checkpoint.resumeOffset(log, "inode-1", 2200));
+        // A reused inode: as large as the old file, but with other lines
+        assertEquals(0, checkpoint.resumeOffset(other, "inode-1", 2900));
+    }
+
+    @Test
+    void findsTheLogACompressedFileWasMadeOf() throws Exception {
+        Path log = write("app.log", 0, 100);
+        Map<String, Checkpoint.FileState> files = new HashMap<>();
+        files.put(Checkpoint.stateKey(log, "inode-1"), Checkpoint.stateOf(log, 2000, 2400));
+        Checkpoint checkpoint = new Checkpoint("key", files, new HashMap<String, Long>());
+
+        assertEquals(2000, checkpoint.countedPrefix(compress(log, "app-old.log.gz")));
+        assertEquals(0, checkpoint.countedPrefix(compress(write("other.log", 500, 100), "other-old.log.gz")));
+    }
+
+    @Test
+    void incrementalRunsDoNotCountCompressedRotatedFilesTwice() throws Exception {
+        write("app.log", 0, 1500);
+        assertEquals(Arrays.asList("Username            Count of records", "u0                  1500"), analyze());
+
+        // Lines written after the last run are only in the compressed file
+        write("app.log", 0, 1600);
+        compress(directory.resolve("app.log"), "app-old.log.gz");
+        Files.delete(directory.resolve("app.log"));
+        write("app.log", 1600, 50);
+        assertEquals(Arrays.asList("Username            Count of records", "u0                  1650"), analyze());
+        assertEquals(Arrays.asList("Username            Count of records", "u0                  1650"), analyze());
+    }
+
+    @Test
+    void incrementalRunsDoNotCountRotatedFilesTwice() throws Exception {
+        write("app.log", 0, 1500);
+        assertEquals(Arrays.asList("Username            Count of records", "u0                  1500"), analyze());
+
+        Files.move(directory.resolve("app.log"), directory.resolve("app-old.log"));
+        write("app.log", 1500, 100);
+        assertEquals(Arrays.asList("Username            Count of records", "u0                  1600"), analyze());
+
+        write("app.log", 1600, 0);
+        analyze();
+        write("app.log", 1600, 200);
+        assertEquals(Arrays.asList("Username            Count of records", "u0                  1800"), analyze());
+    }
+
+    private Path write(String name, int first, int count) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for(int i = first; i < first + count; i++){
+            lines.append(String.format("2020-01-01 %02d:%02d:%02d [u0] : m%n", i / 3600 % 24, i / 60 % 60, i % 60));
+        }
+        return Files.write(directory.resolve(name), lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path compress(Path file, String name) throws Exception {
+        Path compressed = directory.resolve(name);
+        try(OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressed))){
+            Files.copy(file, output);
+        }
+        return compressed;
+    }
+
+    private List<String> analyze() throws Exception {
+        Path output = directory.resolve("output.txt");
+        String[] args = {"-since", "2000-01-01", "-Gusername", "-incremental", "-output", output.toString()};
+        Map<String, Optional<?>> arguments = App.parseArguments(new DefaultParser().parse(App.createOptions(), args));
+        new LogAnalyzeProcessor(directory.toString(), arguments).analyze();
+        return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+}
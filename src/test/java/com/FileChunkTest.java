@@ -0,0 +1,64 @@
+package com;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileChunkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void chunksEndAfterALineFeedAndCoverTheWholeFile() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            text.append("line ").append(i).append(" ").append("x".repeat(i % 37)).append('\n');
+        }
+        text.append("last line without a line feed");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        Path file = directory.resolve("app.log");
+        Files.write(file, bytes);
+
+        for(long chunkSize: new long[]{1, 17, 100, 4096, bytes.length - 1}){
+            List<FileChunk> chunks = FileChunk.split(file, bytes.length, chunkSize);
+            long position = 0;
+            for(int i = 0; i < chunks.size(); i++){
+                FileChunk chunk = chunks.get(i);
+                assertEquals(position, chunk.getStart());
+                assertTrue(chunk.length() > 0);
+                if(i < chunks.size() - 1){
+                    assertEquals('\n', bytes[(int)chunk.getEnd() - 1], "chunk " + chunk + " should end after a line feed");
+                }
+                position = chunk.getEnd();
+            }
+            assertEquals(bytes.length, position);
+        }
+    }
+
+    @Test
+    void smallRangesStayWhole() throws Exception {
+        Path file = directory.resolve("app.log");
+        Files.write(file, "a\nb\n".getBytes(StandardCharsets.UTF_8));
+        List<FileChunk> chunks = FileChunk.split(file, 4, 100);
+        assertEquals(1, chunks.size());
+        assertEquals(4, chunks.get(0).length());
+        assertTrue(FileChunk.split(file, 2, 2, 100).isEmpty());
+    }
+
+    @Test
+    void lastLineEndLeavesAnUnfinishedLine() throws Exception {
+        Path file = directory.resolve("app.log");
+        Files.write(file, "first\nsecond\nthird".getBytes(StandardCharsets.UTF_8));
+        assertEquals(13, FileChunk.lastLineEnd(file, 0, 18));
+        assertEquals(13, FileChunk.lastLineEnd(file, 6, 18));
+        assertEquals(6, FileChunk.lastLineEnd(file, 6, 6));
+    }
+}
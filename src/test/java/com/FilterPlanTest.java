@@ -0,0 +1,76 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterPlanTest {
+
+    private final LogLineParser parser = new LogLineParser();
+    private final RawLogEntry entry = new RawLogEntry(new UsernameDictionary());
+
+    @Test
+    void boundsAreExclusive() throws Exception {
+        FilterPlan plan = plan("-since", "2020-01-30 10:00:00", "-until", "2020-01-30 11:00:00");
+        assertFalse(test(plan, "2020-01-30 10:00:00 [alice] : message"));
+        assertTrue(test(plan, "2020-01-30 10:00:01 [alice] : message"));
+        assertTrue(test(plan, "2020-01-30 10:59:59 [alice] : message"));
+        assertFalse(test(plan, "2020-01-30 11:00:00 [alice] : message"));
+    }
+
+    @Test
+    void matchesTheWholeUsername() throws Exception {
+        FilterPlan plan = plan("-username", "alice");
+        assertTrue(test(plan, "2020-01-30 10:00:00 [alice] : message"));
+        assertFalse(test(plan, "2020-01-30 10:00:00 [alice2] : message"));
+        assertFalse(test(plan, "2020-01-30 10:00:00 [alic] : message"));
+    }
+
+    // The literal fast path must accept exactly the messages the regular expression matches
+    @Test
+    void literalPatternsAgreeWithTheRegex() throws Exception {
+        String[] patterns = {"error", "error.*", ".*error", ".*error.*", "a.b", ".*", "err\\.or.*", ".*error\\.*"};
+        String[] messages = {"error", "error here", "an error", "an error here", "no match", "err.or", "errorx", "error..", "axb",
+                "a.b", "", "an \u00e9rror", "an error \u00e9", "line\u2028error", "an error\u2028"};
+        for(String pattern: patterns){
+            FilterPlan plan = plan("-message", pattern);
+            for(String message: messages){
+                String line = "2020-01-30 10:00:00 [alice] : " + message;
+                assertEquals(Pattern.compile(pattern).matcher(message).matches(), test(plan, line), pattern + " on " + message);
+            }
+        }
+    }
+
+    @Test
+    void countsRejectionsByFilter() throws Exception {
+        FilterPlan plan = plan("-since", "2020-01-30", "-username", "alice", "-message", ".*error.*");
+        test(plan, "2020-01-29 10:00:00 [alice] : error");
+        test(plan, "2020-01-30 10:00:00 [bob] : error");
+        test(plan, "2020-01-30 10:00:00 [alice] : ok");
+        test(plan, "2020-01-30 10:00:00 [alice] : error");
+        AnalysisStats stats = new AnalysisStats();
+        plan.flushRejections(stats);
+        assertTrue(stats.toJson().contains("\"rejectedBy\": {\"message\": 1, \"since\": 1, \"username\": 1}"), stats.toJson());
+    }
+
+    private static FilterPlan plan(String... filters) throws Exception {
+        String[] args = Arrays.copyOf(filters, filters.length + 1);
+        args[filters.length] = "-Gusername";
+        Map<String, Optional<?>> arguments = App.parseArguments(new DefaultParser().parse(App.createOptions(), args));
+        return new FilterPlan(arguments);
+    }
+
+    private boolean test(FilterPlan plan, String line){
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, entry), line);
+        return plan.test(entry);
+    }
+}
@@ -0,0 +1,92 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogAnalyzeProcessorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void countsMatchingRecordsByUsername() throws Exception {
+        write("app0.log",
+                "2020-01-30 10:00:00 [alice] : login ok",
+                "2020-01-30 10:05:00 [bob] : login failed",
+                "not a log line",
+                "2020-01-30 11:00:00 [alice] : logout");
+        write("app1.log",
+                "2020-01-31 09:00:00 [bob] : login ok",
+                "2020-01-31 09:30:00 [carol] : login ok");
+
+        assertEquals(Arrays.asList(
+                "Username            Count of records",
+                "alice               2",
+                "bob                 2",
+                "carol               1"), analyze("-since", "2020-01-01", "-Gusername"));
+        assertEquals(Arrays.asList(
+                "Username            Count of records",
+                "alice               1",
+                "bob                 1",
+                "carol               1"), analyze("-message", "login ok", "-Gusername"));
+    }
+
+    @Test
+    void countsRecordsByUsernameAndDay() throws Exception {
+        write("app.log",
+                "2020-01-30 10:00:00 [alice] : a",
+                "2020-02-01 10:05:00 [alice] : b",
+                "2020-02-01 23:59:59 [bob] : c");
+
+        assertEquals(Arrays.asList(
+                "alice",
+                "Day                 Count of records",
+                "2020-01-30          1",
+                "2020-01-31          0",
+                "2020-02-01          1",
+                "bob",
+                "Day                 Count of records",
+                "2020-01-30          0",
+                "2020-01-31          0",
+                "2020-02-01          1"), analyze("-since", "2020-01-01", "-Gusername", "-Gtime", "1 day"));
+    }
+
+    @Test
+    void givesTheSameCountsWithEveryNumberOfThreads() throws Exception {
+        for(int file = 0; file < 4; file++){
+            StringBuilder lines = new StringBuilder();
+            for(int i = 0; i < 5000; i++){
+                lines.append(String.format("2020-03-%02d %02d:%02d:00 [user%d] : message %d%n", 1 + i % 28, i % 24, i % 60, (i + file) % 7, i));
+            }
+            Files.write(directory.resolve("app" + file + ".log"), lines.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> single = analyze("-since", "2020-01-01", "-Gusername", "-Gtime", "1 hour");
+        assertEquals(single, analyze("-since", "2020-01-01", "-Gusername", "-Gtime", "1 hour", "-threads", "8"));
+    }
+
+    private void write(String name, String... lines) throws Exception {
+        Files.write(directory.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private List<String> analyze(String... args) throws Exception {
+        Path output = directory.resolve("output.txt");
+        String[] withOutput = Arrays.copyOf(args, args.length + 2);
+        withOutput[args.length] = "-output";
+        withOutput[args.length + 1] = output.toString();
+        Map<String, Optional<?>> arguments = App.parseArguments(new DefaultParser().parse(App.createOptions(), withOutput));
+        new LogAnalyzeProcessor(directory.toString(), arguments).analyze();
+        return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogFollowerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rotatedFilesAreNotReadAgain() throws Exception {
+        LogFollower follower = follower();
+        Path log = directory.resolve("app.log");
+        Path rotated = directory.resolve("app-old.log");
+        write(log, 0, 100);
+        follower.readAppended(Collections.singleton(log));
+        assertEquals(100L, follower.getContainer().get("u0"));
+
+        // Lines written just before the rotation are read under the new name
+        write(log, 100, 10);
+        Files.move(log, rotated);
+        write(log, 110, 20);
+        follower.readAppended(new LinkedHashSet<>(Arrays.asList(rotated, log)));
+        assertEquals(130L, follower.getContainer().get("u0"));
+
+        write(log, 130, 5);
+        follower.readAppended(new LinkedHashSet<>(Arrays.asList(rotated, log)));
+        assertEquals(135L, follower.getContainer().get("u0"));
+    }
+
+    @Test
+    void truncatedFilesAreReadFromTheStart() throws Exception {
+        LogFollower follower = follower();
+        Path log = directory.resolve("app.log");
+        write(log, 0, 100);
+        follower.readAppended(Collections.singleton(log));
+        Files.write(log, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        write(log, 100, 10);
+        follower.readAppended(Collections.singleton(log));
+        assertEquals(110L, follower.getContainer().get("u0"));
+    }
+
+    @Test
+    void readsCompressedFilesOnceLikeABatchRun() throws Exception {
+        LogFollower follower = follower();
+        Path log = directory.resolve("app.log");
+        Path compressed = directory.resolve("app-old.log.gz");
+        write(log, 0, 100);
+        StringBuilder lines = new StringBuilder();
+        for(int i = 0; i < 50; i++){
+            lines.append("2019-12-31 10:00:00 [u0] : m\n");
+        }
+        try(OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressed))){
+            output.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        follower.readAppended(new LinkedHashSet<>(new LogAnalyzeProcessor(directory.toString(), arguments("-follow")).listInputFiles()));
+        assertEquals(150L, follower.getContainer().get("u0"));
+    }
+
+    @Test
+    void rejectsOptionsItWouldIgnore(){
+        for(String[] options: new String[][]{{"-threads", "4"}, {"-shard", "0/2"}, {"-files", "list.txt"}, {"-incremental"}, {"-cache", "cache"}}){
+            String[] args = Arrays.copyOf(options, options.length + 1);
+            args[options.length] = "-follow";
+            assertThrows(ParseException.class, () -> arguments(args), String.join(" ", options));
+        }
+    }
+
+    private LogFollower follower() throws Exception {
+        Map<String, Optional<?>> arguments = arguments("-follow");
+        LogAnalyzeProcessor processor = new LogAnalyzeProcessor(directory.toString(), arguments);
+        return new LogFollower(directory, arguments, processor.groupingOptions(), processor);
+    }
+
+    private static Map<String, Optional<?>> arguments(String... options) throws ParseException {
+        List<String> args = new ArrayList<>(Arrays.asList("-since", "2000-01-01", "-Gusername"));
+        args.addAll(Arrays.asList(options));
+        return App.parseArguments(new DefaultParser().parse(App.createOptions(), args.toArray(new String[0])));
+    }
+
+    private static void write(Path file, int first, int count) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for(int i = first; i < first + count; i++){
+            lines.append(String.format("2020-01-01 %02d:%02d:%02d [u0] : m%n", i / 3600 % 24, i / 60 % 60, i % 60));
+        }
+        Files.write(file, lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,60 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexesAreOnlyUsedWithTheirFormat() throws Exception {
+        Path logs = Files.createDirectory(directory.resolve("logs"));
+        Path log = logs.resolve("app.log");
+        StringBuilder lines = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            lines.append(String.format("2020-01-01 10:%02d:%02d u%d m%n", i / 60 % 60, i % 60, i % 3));
+        }
+        Files.write(log, lines.toString().getBytes(StandardCharsets.UTF_8));
+        Path format = directory.resolve("format.txt");
+        Files.write(format, "yyyy-MM-dd HH:mm:ss username message".getBytes(StandardCharsets.UTF_8));
+
+        // No line has the default layout, so every block of this index is empty
+        assertEquals(Collections.singletonList("Username            Count of records"), analyze(logs, "-index"));
+        assertTrue(Files.exists(LogIndex.indexPath(log)));
+        BasicFileAttributes attributes = Files.readAttributes(log, BasicFileAttributes.class);
+        assertNotNull(LogIndex.load(log, attributes.size(), attributes.lastModifiedTime().toMillis(), LogFormat.DEFAULT.getDefinitionHash()));
+        long otherHash = LogFormat.load(format).getDefinitionHash();
+        assertNull(LogIndex.load(log, attributes.size(), attributes.lastModifiedTime().toMillis(), otherHash));
+
+        List<String> expected = Arrays.asList("Username            Count of records", "u0                  334", "u1                  333", "u2                  333");
+        assertEquals(expected, sorted(analyze(logs, "-index", "-format", format.toString())));
+        assertEquals(expected, sorted(analyze(logs, "-index", "-format", format.toString())));
+    }
+
+    private List<String> analyze(Path logs, String... options) throws Exception {
+        Path output = directory.resolve("output.txt");
+        List<String> args = new ArrayList<>(Arrays.asList("-since", "2000-01-01", "-Gusername", "-output", output.toString()));
+        args.addAll(Arrays.asList(options));
+        Map<String, Optional<?>> arguments = App.parseArguments(new DefaultParser().parse(App.createOptions(), args.toArray(new String[0])));
+        new LogAnalyzeProcessor(logs.toString(), arguments).analyze();
+        return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> sorted(List<String> lines){
+        List<String> sorted = new ArrayList<>(lines.subList(1, lines.size()));
+        Collections.sort(sorted);
+        sorted.add(0, lines.get(0));
+        return sorted;
+    }
+}
@@ -0,0 +1,88 @@
+package com;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogLineParserTest {
+
+    private final LogLineParser parser = new LogLineParser();
+    private final RawLogEntry entry = new RawLogEntry(new UsernameDictionary());
+
+    @Test
+    void parsesTimestampUsernameAndMessage(){
+        assertTrue(parse("2020-01-30 10:15:42 [alice_1] : hello : world"));
+        assertEquals(LocalDateTime.of(2020, 1, 30, 10, 15, 42), entry.getDateTime());
+        assertEquals("alice_1", entry.getUsername());
+        assertEquals("hello : world", entry.getMessage());
+    }
+
+    @Test
+    void acceptsAnyWhitespaceBetweenTheParts(){
+        assertTrue(parse("2020-01-30\t10:15:42\t[bob]\t:\tmessage"));
+        assertEquals("bob", entry.getUsername());
+        assertEquals("message", entry.getMessage());
+    }
+
+    @Test
+    void reportsWhyALineIsMalformed(){
+        assertFailure(ErrorType.SHORT_LINE, "2020-01-30 10:15:42");
+        assertFailure(ErrorType.TIMESTAMP, "2020-13-30 10:15:42 [alice] : message");
+        assertFailure(ErrorType.TIMESTAMP, "2020/01/30 10:15:42 [alice] : message");
+        assertFailure(ErrorType.TIMESTAMP, "2020-01-30 24:00:00 [alice] : message");
+        assertFailure(ErrorType.USERNAME, "2020-01-30 10:15:42 [al-ice] : message");
+        assertFailure(ErrorType.USERNAME, "2020-01-30 10:15:42 [] : message");
+        assertFailure(ErrorType.SEPARATOR, "2020-01-30 10:15:42 [alice] - message");
+        assertFailure(ErrorType.SEPARATOR, "2020-01-30 10:15:42 (alice) : message");
+    }
+
+    @Test
+    void movesDaysPastTheEndOfTheMonthBackLikeTheSmartResolver(){
+        assertTrue(parse("2021-02-30 00:00:00 [alice] : message"));
+        assertEquals(LocalDateTime.of(2021, 2, 28, 0, 0), entry.getDateTime());
+        assertTrue(parse("2020-02-31 00:00:00 [alice] : message"));
+        assertEquals(LocalDateTime.of(2020, 2, 29, 0, 0), entry.getDateTime());
+        assertTrue(parse("1900-02-29 00:00:00 [alice] : message"));
+        assertEquals(LocalDateTime.of(1900, 2, 28, 0, 0), entry.getDateTime());
+        assertTrue(parse("2021-04-31 12:00:00 [alice] : message"));
+        assertEquals(LocalDateTime.of(2021, 4, 30, 12, 0), entry.getDateTime());
+        assertFalse(parse("2021-04-32 12:00:00 [alice] : message"));
+    }
+
+    @Test
+    void agreesWithJavaTimeOnEpochSeconds(){
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++){
+            // Years 1 to about 6000
+            LocalDate date = LocalDate.ofEpochDay(random.nextInt(2_900_000) - 719_000);
+            LocalDateTime dateTime = date.atTime(random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            assertEquals(dateTime.toEpochSecond(ZoneOffset.UTC), LogLineParser.epochSecond(dateTime.getYear(), dateTime.getMonthValue(),
+                    dateTime.getDayOfMonth(), dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond()), dateTime.toString());
+        }
+    }
+
+    @Test
+    void parsesALineInTheMiddleOfABuffer(){
+        byte[] bytes = "xx2020-01-30 10:15:42 [carol] : m\nyy".getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.parse(ByteBuffer.wrap(bytes), 2, bytes.length - 3, entry));
+        assertEquals("carol", entry.getUsername());
+        assertEquals("m", entry.getMessage());
+    }
+
+    private boolean parse(String line){
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, entry);
+    }
+
+    private void assertFailure(ErrorType expected, String line){
+        assertFalse(parse(line), line);
+        assertEquals(expected, parser.getFailure(), line);
+    }
+}
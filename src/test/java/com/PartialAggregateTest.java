@@ -0,0 +1,91 @@
+package com;
+
+import org.apache.commons.cli.DefaultParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialAggregateTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsCountsGroupingAndField() throws Exception {
+        Map<String, Map<LocalDateTime, Long>> container = new HashMap<>();
+        container.computeIfAbsent("ERROR", key -> new HashMap<>()).put(LocalDateTime.of(2020, 1, 1, 0, 0), 3L);
+        container.computeIfAbsent("INFO", key -> new HashMap<>()).put(LocalDateTime.of(2020, 1, 2, 0, 0), 5L);
+        Path path = directory.resolve("0.partial");
+        new PartialAggregate("key", GroupingOptions.ALL, ChronoUnit.DAYS, "level", container).write(path);
+
+        PartialAggregate read = PartialAggregate.read(path);
+        assertEquals(GroupingOptions.ALL, read.getGroupingOptions());
+        assertEquals(ChronoUnit.DAYS, read.getTimeUnit());
+        assertEquals("level", read.getGroupField());
+        assertEquals(container, read.getContainer());
+    }
+
+    @Test
+    void roundTripsCountsWithoutGrouping() throws Exception {
+        Map<String, Long> container = new HashMap<>();
+        container.put("alice", 7L);
+        Path path = directory.resolve("0.partial");
+        new PartialAggregate("key", EnumSet.of(GroupingOptions.USERNAME), null, null, container).write(path);
+
+        PartialAggregate read = PartialAggregate.read(path);
+        assertEquals(EnumSet.of(GroupingOptions.USERNAME), read.getGroupingOptions());
+        assertNull(read.getTimeUnit());
+        assertNull(read.getGroupField());
+        assertEquals(container, read.getContainer());
+    }
+
+    @Test
+    void mergedShardsEqualOneRunOverAllFiles() throws Exception {
+        Path logs = Files.createDirectory(directory.resolve("logs"));
+        for(int file = 0; file < 5; file++){
+            StringBuilder lines = new StringBuilder();
+            for(int i = 0; i < 200; i++){
+                lines.append(String.format("2020-01-%02d %02d:00:00 [u%d] : m%n", 1 + (file + i) % 3, i % 24, (file * i) % 7));
+            }
+            Files.write(logs.resolve("app-" + file + ".log"), lines.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Path all = directory.resolve("all.partial");
+        analyze(logs, all);
+        List<Path> shards = new ArrayList<>();
+        for(int shard = 0; shard < 3; shard++){
+            shards.add(directory.resolve(shard + ".partial"));
+            analyze(logs, shards.get(shard), "-shard", shard + "/3");
+        }
+
+        assertEquals(PartialAggregate.read(all).getContainer(), PartialAggregate.merge(shards).getContainer());
+        // Merged in stages, in another order
+        Path staged = directory.resolve("staged.partial");
+        PartialAggregate.merge(Arrays.asList(shards.get(2), shards.get(0))).write(staged);
+        assertEquals(PartialAggregate.read(all).getContainer(), PartialAggregate.merge(Arrays.asList(shards.get(1), staged)).getContainer());
+    }
+
+    @Test
+    void rejectsPartialsOfOtherArguments() throws Exception {
+        Path first = directory.resolve("0.partial");
+        Path second = directory.resolve("1.partial");
+        new PartialAggregate("-since 2020-01-01", EnumSet.of(GroupingOptions.USERNAME), null, null, new HashMap<String, Long>()).write(first);
+        new PartialAggregate("-since 2020-02-01", EnumSet.of(GroupingOptions.USERNAME), null, null, new HashMap<String, Long>()).write(second);
+        assertThrows(IOException.class, () -> PartialAggregate.merge(Arrays.asList(first, second)));
+    }
+
+    private static void analyze(Path logs, Path partial, String... extra) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList("-since", "2000-01-01", "-Gusername", "-Gtime", "1 day", "-partial", partial.toString()));
+        args.addAll(Arrays.asList(extra));
+        Map<String, Optional<?>> arguments = App.parseArguments(new DefaultParser().parse(App.createOptions(), args.toArray(new String[0])));
+        new LogAnalyzeProcessor(logs.toString(), arguments).analyze();
+    }
+}
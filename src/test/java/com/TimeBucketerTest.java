@@ -0,0 +1,45 @@
+package com;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TimeBucketerTest {
+
+    @Test
+    void truncatesToTheStartOfThePeriod(){
+        LocalDateTime dateTime = LocalDateTime.of(2020, 2, 29, 23, 59, 59);
+        assertEquals(LocalDateTime.of(2020, 2, 29, 23, 0), TimeBucketer.truncate(dateTime, ChronoUnit.HOURS));
+        assertEquals(LocalDateTime.of(2020, 2, 29, 0, 0), TimeBucketer.truncate(dateTime, ChronoUnit.DAYS));
+        assertEquals(LocalDateTime.of(2020, 2, 1, 0, 0), TimeBucketer.truncate(dateTime, ChronoUnit.MONTHS));
+    }
+
+    @Test
+    void monthsEndAtCalendarMonthBoundaries(){
+        TimeBucketer bucketer = new TimeBucketer(ChronoUnit.MONTHS);
+        assertEquals(LocalDateTime.of(2020, 1, 1, 0, 0), bucketer.bucketOf(epochSecond(2020, 1, 31, 23, 59, 59)));
+        assertEquals(LocalDateTime.of(2020, 2, 1, 0, 0), bucketer.bucketOf(epochSecond(2020, 2, 1, 0, 0, 0)));
+        assertEquals(LocalDateTime.of(2020, 2, 1, 0, 0), bucketer.bucketOf(epochSecond(2020, 2, 29, 23, 59, 59)));
+        assertEquals(LocalDateTime.of(2020, 3, 1, 0, 0), bucketer.bucketOf(epochSecond(2020, 3, 1, 0, 0, 0)));
+        assertEquals(LocalDateTime.of(2019, 12, 1, 0, 0), bucketer.bucketOf(epochSecond(2019, 12, 31, 12, 0, 0)));
+    }
+
+    @Test
+    void reusesTheBucketOfRecordsInTheSamePeriod(){
+        TimeBucketer bucketer = new TimeBucketer(ChronoUnit.HOURS);
+        LocalDateTime first = bucketer.bucketOf(epochSecond(2020, 1, 1, 10, 0, 0));
+        assertSame(first, bucketer.bucketOf(epochSecond(2020, 1, 1, 10, 59, 59)));
+        assertEquals(LocalDateTime.of(2020, 1, 1, 11, 0), bucketer.bucketOf(epochSecond(2020, 1, 1, 11, 0, 0)));
+        // Going back in time leaves the cached bucket
+        assertEquals(LocalDateTime.of(2020, 1, 1, 9, 0), bucketer.bucketOf(epochSecond(2020, 1, 1, 9, 30, 0)));
+    }
+
+    private static long epochSecond(int year, int month, int day, int hour, int minute, int second){
+        return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC);
+    }
+}